@@ -0,0 +1,152 @@
+package de.cxp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.cxp.predict.LookupContext;
+import de.cxp.predict.PreDict;
+import de.cxp.predict.PreDict.AccuracyLevel;
+import de.cxp.predict.PreDict.DistanceFilterType;
+import de.cxp.predict.api.PreDictSettings;
+import de.cxp.predict.customizing.CommunityCustomization;
+import de.cxp.predict.customizing.NoopPreDictCustomizing;
+import de.cxp.spellcorrect.predict.PreDictWrapper;
+import de.cxp.spellcorrect.util.TestDataProvider;
+
+/**
+ * Measures the lookups on the bundled test sets together with the number of
+ * candidates whose weighted distance had to be checked ("checked") and the
+ * number of them that were rejected by the distance filters without
+ * calculating the distance ("filtered"), in total and by each filter. The
+ * share of filtered candidates is filtered / checked. The English test sets
+ * are compared with deutsch.txt, that is searched with words of it with one
+ * random replacement.
+ */
+public class DistanceFilterBenchmark {
+
+	private static final String WORDLIST = "../spellcorrect-comparison/src/test/resources/deutsch.txt";
+
+	@State(Scope.Benchmark)
+	public static class Data {
+
+		@Param({ "spell-testset1.txt", "spell-testset2.txt", "spell-testset3.txt", "deutsch.txt" })
+		public String testset;
+
+		@Param({ "topHit", "maximum" })
+		public AccuracyLevel accuracyLevel;
+
+		@Param({ "noop", "community" })
+		public String customization;
+
+		public PreDict preDict;
+		public List<String> queries;
+
+		@Setup
+		public void up() throws IOException {
+			PreDictSettings settings = new PreDictSettings().accuracyLevel(accuracyLevel);
+			preDict = new PreDict("noop".equals(customization)
+					? new NoopPreDictCustomizing(settings)
+					: new CommunityCustomization(settings));
+			if ("deutsch.txt".equals(testset)) {
+				List<String> words = Files.readAllLines(Paths.get(System.getProperty("wordlist", WORDLIST)),
+						StandardCharsets.ISO_8859_1);
+				for (String word : words) {
+					preDict.indexWord(word);
+				}
+				Random random = new Random(42);
+				queries = new ArrayList<>(10000);
+				while (queries.size() < 10000) {
+					StringBuilder typo = new StringBuilder(words.get(random.nextInt(words.size())));
+					typo.setCharAt(random.nextInt(typo.length()), (char) ('a' + random.nextInt(26)));
+					queries.add(typo.toString());
+				}
+				return;
+			}
+			TestDataProvider dataProvider = new TestDataProvider(testset);
+			dataProvider.populateWordSearch(new PreDictWrapper(preDict));
+			queries = dataProvider.getQueries();
+		}
+	}
+
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Counters {
+
+		private final LookupContext context = new LookupContext();
+		private long checkedBefore;
+		private long filteredBefore;
+		private long letterSignatureBefore;
+		private long editCountBefore;
+		private int n = 0;
+
+		public long checked;
+		public long filtered;
+		public long letterSignature;
+		public long editCount;
+
+		@Setup(Level.Iteration)
+		public void reset() {
+			checked = 0;
+			filtered = 0;
+			letterSignature = 0;
+			editCount = 0;
+		}
+
+		String getNextQuery(List<String> queries) {
+			if (n >= queries.size()) n = 0;
+			return queries.get(n++);
+		}
+
+		void count() {
+			checked += context.getCheckedDistances() - checkedBefore;
+			filtered += context.getFilteredDistances() - filteredBefore;
+			letterSignature += context.getRejectedDistances(DistanceFilterType.letterSignature) - letterSignatureBefore;
+			editCount += context.getRejectedDistances(DistanceFilterType.editCount) - editCountBefore;
+			checkedBefore = context.getCheckedDistances();
+			filteredBefore = context.getFilteredDistances();
+			letterSignatureBefore = context.getRejectedDistances(DistanceFilterType.letterSignature);
+			editCountBefore = context.getRejectedDistances(DistanceFilterType.editCount);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<String> lookup(Data data, Counters counters) {
+		List<String> result = data.preDict.findSimilarWords(counters.getNextQuery(data.queries), counters.context);
+		counters.count();
+		return result;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(DistanceFilterBenchmark.class.getSimpleName())
+				.warmupIterations(5)
+				.measurementIterations(5)
+				.forks(1)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
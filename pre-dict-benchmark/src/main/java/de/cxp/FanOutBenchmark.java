@@ -0,0 +1,124 @@
+package de.cxp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.cxp.predict.LookupContext;
+import de.cxp.predict.PreDict;
+import de.cxp.predict.PreDict.IndexType;
+import de.cxp.predict.api.PreDictSettings;
+import de.cxp.predict.customizing.CommunityCustomization;
+
+/**
+ * Measures the latency distribution of search words with 2 or 3 chars, whose
+ * fragments are shared by many words, with and without a fan-out budget. The
+ * index is the frozen and hashed index of deutsch.txt at the maximum accuracy
+ * level. Sample mode reports the percentiles of single lookups, the setup
+ * prints how many fragments were truncated and how many results differ from
+ * the ones without budget.
+ */
+public class FanOutBenchmark {
+
+	private static final String WORDLIST = "../spellcorrect-comparison/src/test/resources/deutsch.txt";
+
+	@State(Scope.Benchmark)
+	public static class Data {
+
+		@Param({ "2", "3" })
+		public int editDistanceMax;
+
+		@Param({ "0", "250" })
+		public int maxFanOut;
+
+		public PreDict preDict;
+		public List<String> queries;
+
+		@Setup
+		public void up() throws IOException {
+			List<String> words = Files.readAllLines(Paths.get(WORDLIST), StandardCharsets.ISO_8859_1);
+			preDict = create(words, maxFanOut);
+
+			Random random = new Random(42);
+			queries = new ArrayList<>();
+			while (queries.size() < 1000) {
+				String word = words.get(random.nextInt(words.size()));
+				int length = 2 + random.nextInt(2);
+				if (word.length() >= length) queries.add(word.substring(0, length));
+			}
+
+			if (maxFanOut > 0) {
+				PreDict unbounded = create(words, 0);
+				LookupContext context = new LookupContext();
+				int differences = 0;
+				for (String query : queries) {
+					if (!preDict.findSimilarWords(query, context).equals(unbounded.findSimilarWords(query))) {
+						differences++;
+					}
+				}
+				System.out.printf("%nmaxFanOut=%d: %.1f truncated fragments and %.0f skipped words per lookup,"
+						+ " %d of %d results differ%n", maxFanOut,
+						(double) context.getTruncatedFragments() / queries.size(),
+						(double) context.getSkippedWords() / queries.size(), differences, queries.size());
+			}
+		}
+
+		private PreDict create(List<String> words, int maxFanOut) {
+			PreDictSettings settings = new PreDictSettings()
+					.editDistanceMax(editDistanceMax)
+					.indexType(IndexType.hashed)
+					.maxFanOut(maxFanOut);
+			PreDict preDict = new PreDict(new CommunityCustomization(settings));
+			for (String word : words) {
+				preDict.indexWord(word);
+			}
+			return preDict.freeze();
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Iterator {
+		private int n = 0;
+		String getNextQuery(List<String> queries) {
+			if (n >= queries.size()) n = 0;
+			return queries.get(n++);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SampleTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<String> shortSearchWords(Data data, Iterator i) {
+		return data.preDict.findSimilarWords(i.getNextQuery(data.queries));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(FanOutBenchmark.class.getSimpleName())
+				.warmupIterations(5)
+				.measurementIterations(5)
+				.forks(1)
+				.jvmArgs("-Xmx4g")
+				.build();
+
+		new Runner(opt).run();
+	}
+}
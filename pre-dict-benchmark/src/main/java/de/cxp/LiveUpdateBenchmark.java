@@ -0,0 +1,154 @@
+package de.cxp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.cxp.predict.PreDict;
+import de.cxp.predict.PreDict.AccuracyLevel;
+import de.cxp.predict.PreDict.IndexType;
+import de.cxp.predict.api.PreDictSettings;
+import de.cxp.predict.customizing.CommunityCustomization;
+
+/**
+ * Compares the lookup throughput of a frozen index with the one of an index
+ * with live updates, with and without a concurrent writer. 90% of the words of
+ * deutsch.txt are indexed upfront, the writer indexes the remaining words one
+ * by one and afterwards increases their counts.
+ */
+public class LiveUpdateBenchmark {
+
+	private static final String WORDLIST = "../spellcorrect-comparison/src/test/resources/deutsch.txt";
+
+	private static PreDict create(List<String> words, boolean live) {
+		PreDictSettings settings = new PreDictSettings()
+				.accuracyLevel(AccuracyLevel.topHit)
+				.indexType(IndexType.hashed);
+		PreDict preDict = new PreDict(new CommunityCustomization(settings));
+		for (String word : words) {
+			preDict.indexWord(word);
+		}
+		return live ? preDict.enableLiveUpdates() : preDict.freeze();
+	}
+
+	private static List<String> readWords() throws IOException {
+		List<String> words = Files.readAllLines(Paths.get(System.getProperty("wordlist", WORDLIST)),
+				StandardCharsets.ISO_8859_1);
+		Collections.shuffle(words, new Random(42));
+		return words;
+	}
+
+	private static List<String> createTypos(List<String> words, int n, Random random) {
+		List<String> typos = new ArrayList<>(n);
+		while (typos.size() < n) {
+			StringBuilder typo = new StringBuilder(words.get(random.nextInt(words.size())));
+			int i = random.nextInt(typo.length());
+			typo.setCharAt(i, (char) ('a' + random.nextInt(26)));
+			typos.add(typo.toString());
+		}
+		return typos;
+	}
+
+	@State(Scope.Benchmark)
+	public static class Data {
+
+		@Param({ "false", "true" })
+		public boolean live;
+
+		public PreDict preDict;
+		public List<String> queries;
+
+		@Setup
+		public void up() throws IOException {
+			List<String> words = readWords();
+			preDict = create(words.subList(0, words.size() * 9 / 10), live);
+			queries = createTypos(words, 10000, new Random(42));
+		}
+	}
+
+	@State(Scope.Group)
+	public static class LiveData {
+
+		public PreDict preDict;
+		public List<String> queries;
+		public List<String> newWords;
+
+		@Setup
+		public void up() throws IOException {
+			List<String> words = readWords();
+			int split = words.size() * 9 / 10;
+			preDict = create(words.subList(0, split), true);
+			queries = createTypos(words, 10000, new Random(42));
+			newWords = new ArrayList<>(words.subList(split, words.size()));
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Iterator {
+		private int n = 0;
+		String getNext(List<String> list) {
+			if (n >= list.size()) n = 0;
+			return list.get(n++);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Threads(3)
+	public List<String> readOnly(Data data, Iterator i) {
+		return data.preDict.findSimilarWords(i.getNext(data.queries));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Group("readWrite")
+	@GroupThreads(3)
+	public List<String> search(LiveData data, Iterator i) {
+		return data.preDict.findSimilarWords(i.getNext(data.queries));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Group("readWrite")
+	@GroupThreads(1)
+	public boolean index(LiveData data, Iterator i) {
+		return data.preDict.indexWord(i.getNext(data.newWords));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(LiveUpdateBenchmark.class.getSimpleName())
+				.warmupIterations(5)
+				.measurementIterations(5)
+				.forks(1)
+				.jvmArgs("-Xmx4g")
+				.build();
+
+		new Runner(opt).run();
+	}
+}
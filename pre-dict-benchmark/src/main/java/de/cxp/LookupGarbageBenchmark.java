@@ -0,0 +1,109 @@
+package de.cxp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.cxp.predict.PreDict;
+import de.cxp.predict.PreDict.AccuracyLevel;
+import de.cxp.predict.PreDict.IndexType;
+import de.cxp.predict.api.PreDictSettings;
+import de.cxp.predict.customizing.CommunityCustomization;
+import de.cxp.predict.customizing.NoopPreDictCustomizing;
+
+/**
+ * Measures the lookup time together with the garbage produced per lookup
+ * (gc.alloc.rate.norm of the GC profiler). The index is built from
+ * deutsch.txt, the queries are words of it with one random replacement.
+ * The noop customization shows the allocations of the lookup itself, the
+ * community customization adds the ones of its final ranking.
+ */
+public class LookupGarbageBenchmark {
+
+	private static final String WORDLIST = "../spellcorrect-comparison/src/test/resources/deutsch.txt";
+
+	@State(Scope.Benchmark)
+	public static class Data {
+
+		@Param({ "topHit", "maximum" })
+		public AccuracyLevel accuracyLevel;
+
+		@Param({ "noop", "community" })
+		public String customization;
+
+		public PreDict preDict;
+		public List<String> queries;
+
+		@Setup
+		public void up() throws IOException {
+			List<String> words = Files.readAllLines(Paths.get(System.getProperty("wordlist", WORDLIST)),
+					StandardCharsets.ISO_8859_1);
+			PreDictSettings settings = new PreDictSettings()
+					.accuracyLevel(accuracyLevel)
+					.indexType(IndexType.hashed);
+			preDict = new PreDict("noop".equals(customization)
+					? new NoopPreDictCustomizing(settings)
+					: new CommunityCustomization(settings));
+			for (String word : words) {
+				preDict.indexWord(word);
+			}
+			preDict.freeze();
+
+			Random random = new Random(42);
+			queries = new ArrayList<>(10000);
+			while (queries.size() < 10000) {
+				StringBuilder typo = new StringBuilder(words.get(random.nextInt(words.size())));
+				typo.setCharAt(random.nextInt(typo.length()), (char) ('a' + random.nextInt(26)));
+				queries.add(typo.toString());
+			}
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Iterator {
+		private int n = 0;
+		String getNextQuery(List<String> queries) {
+			if (n >= queries.size()) n = 0;
+			return queries.get(n++);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<String> lookup(Data data, Iterator i) {
+		return data.preDict.findSimilarWords(i.getNextQuery(data.queries));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(LookupGarbageBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.warmupIterations(5)
+				.measurementIterations(5)
+				.forks(1)
+				.jvmArgs("-Xmx4g")
+				.build();
+
+		new Runner(opt).run();
+	}
+}
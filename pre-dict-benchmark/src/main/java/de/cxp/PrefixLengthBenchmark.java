@@ -0,0 +1,143 @@
+package de.cxp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.cxp.predict.PreDict;
+import de.cxp.predict.PreDict.AccuracyLevel;
+import de.cxp.predict.PreDict.IndexType;
+import de.cxp.predict.api.PreDictSettings;
+import de.cxp.predict.customizing.CommunityCustomization;
+
+/**
+ * Compares index size and lookup time of different prefix lengths on the
+ * bundled word lists. The word lists are read from the directory given by the
+ * system property "wordlist.dir", which defaults to the test resources of the
+ * comparison project.
+ *
+ * The index size is the size of the written index snapshot. The queries are
+ * dictionary words with one or two random edits.
+ */
+public class PrefixLengthBenchmark {
+
+	private static final String WORDLIST_DIR = "../spellcorrect-comparison/src/test/resources";
+
+	@State(Scope.Benchmark)
+	public static class Data {
+
+		@Param({ "deutsch.txt", "english3.txt" })
+		public String wordlist;
+
+		@Param({ "5", "7", "10", "2147483647" })
+		public int prefixLength;
+
+		public PreDict preDict;
+		public List<String> queries;
+
+		@Setup
+		public void up() throws IOException {
+			Path dir = Paths.get(System.getProperty("wordlist.dir", WORDLIST_DIR));
+			List<String> words = Files.readAllLines(dir.resolve(wordlist), StandardCharsets.ISO_8859_1);
+
+			PreDictSettings settings = new PreDictSettings()
+					.accuracyLevel(AccuracyLevel.topHit)
+					.indexType(IndexType.hashed)
+					.prefixLength(prefixLength);
+			preDict = new PreDict(new CommunityCustomization(settings));
+
+			long start = System.nanoTime();
+			for (String word : words) {
+				preDict.indexWord(word);
+			}
+			preDict.freeze();
+			long buildTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+			Path snapshot = Files.createTempFile("predict", ".idx");
+			try {
+				preDict.save(snapshot);
+				System.out.printf("%n%s prefixLength=%d: %d words, build time %d ms, index size %.1f MB%n",
+						wordlist, prefixLength, words.size(), buildTime, Files.size(snapshot) / 1024d / 1024d);
+			} finally {
+				Files.delete(snapshot);
+			}
+
+			queries = createTypos(words, 10000, new Random(42));
+		}
+
+		private static List<String> createTypos(List<String> words, int n, Random random) {
+			List<String> typos = new ArrayList<>(n);
+			while (typos.size() < n) {
+				StringBuilder typo = new StringBuilder(words.get(random.nextInt(words.size())));
+				for (int edits = 1 + random.nextInt(2); edits > 0 && typo.length() > 1; edits--) {
+					int i = random.nextInt(typo.length() - 1);
+					char c = (char) ('a' + random.nextInt(26));
+					switch (random.nextInt(4)) {
+						case 0:
+							typo.deleteCharAt(i);
+							break;
+						case 1:
+							typo.insert(i, c);
+							break;
+						case 2:
+							typo.setCharAt(i, c);
+							break;
+						default:
+							char swap = typo.charAt(i);
+							typo.setCharAt(i, typo.charAt(i + 1));
+							typo.setCharAt(i + 1, swap);
+					}
+				}
+				typos.add(typo.toString());
+			}
+			return typos;
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Iterator {
+		private int n = 0;
+		String getNextQuery(List<String> queries) {
+			if (n >= queries.size()) n = 0;
+			return queries.get(n++);
+		}
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<String> testSingleSearch(Data data, Iterator i) {
+		return data.preDict.findSimilarWords(i.getNextQuery(data.queries));
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(PrefixLengthBenchmark.class.getSimpleName())
+				.warmupIterations(5)
+				.measurementIterations(5)
+				.forks(1)
+				.jvmArgs("-Xmx4g")
+				.build();
+
+		new Runner(opt).run();
+	}
+}
@@ -0,0 +1,218 @@
+package de.cxp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import de.cxp.predict.common.FragmentProximity;
+import de.cxp.predict.common.PrefixProximity;
+
+/**
+ * Compares the Jaro-Winkler (PrefixProximity) and Dice (FragmentProximity)
+ * implementations with the previous ones, that allocated their buffers on
+ * every call. The pairs are the misspellings of the bundled test sets with
+ * their correct word. Run it with the GC profiler to see the allocations per
+ * call (gc.alloc.rate.norm).
+ */
+@State(Scope.Thread)
+public class ProximityBenchmark {
+
+	@Param({ "spell-testset1.txt", "spell-testset2.txt", "spell-testset3.txt" })
+	public String testset;
+
+	private final List<String[]> pairs = new ArrayList<>();
+	private int n = 0;
+
+	private final PrefixProximity prefixProximity = new PrefixProximity();
+	private final PreviousPrefixProximity previousPrefixProximity = new PreviousPrefixProximity();
+
+	@Setup
+	public void up() throws IOException {
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				getClass().getClassLoader().getResourceAsStream(testset), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] columns = line.split(":");
+				if (columns.length < 3) continue;
+				for (String misspelling : columns[2].split(",")) {
+					pairs.add(new String[] { misspelling, columns[0] });
+				}
+			}
+		}
+	}
+
+	private String[] nextPair() {
+		if (n >= pairs.size()) n = 0;
+		return pairs.get(n++);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public float prefixProximity() {
+		String[] pair = nextPair();
+		return prefixProximity.distance(pair[0], pair[1]);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public float previousPrefixProximity() {
+		String[] pair = nextPair();
+		return previousPrefixProximity.distance(pair[0], pair[1]);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public double fragmentProximity() {
+		String[] pair = nextPair();
+		return FragmentProximity.distance(pair[0], pair[1]);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public double previousFragmentProximity() {
+		String[] pair = nextPair();
+		return previousFragmentProximity(pair[0], pair[1]);
+	}
+
+	// the Jaro-Winkler implementation before it used bit masks
+	static class PreviousPrefixProximity {
+
+		private final float threshold = 0.7f;
+
+		private int[] matches(String s1, String s2) {
+			String max, min;
+			if (s1.length() > s2.length()) {
+				max = s1;
+				min = s2;
+			} else {
+				max = s2;
+				min = s1;
+			}
+			int range = Math.max(max.length() / 2 - 1, 0);
+			int[] matchIndexes = new int[min.length()];
+			Arrays.fill(matchIndexes, -1);
+			boolean[] matchFlags = new boolean[max.length()];
+			int matches = 0;
+			for (int mi = 0; mi < min.length(); mi++) {
+				char c1 = min.charAt(mi);
+				for (int xi = Math.max(mi - range, 0), xn = Math.min(mi + range + 1, max
+						.length()); xi < xn; xi++) {
+					if (!matchFlags[xi] && c1 == max.charAt(xi)) {
+						matchIndexes[mi] = xi;
+						matchFlags[xi] = true;
+						matches++;
+						break;
+					}
+				}
+			}
+			char[] ms1 = new char[matches];
+			char[] ms2 = new char[matches];
+			for (int i = 0, si = 0; i < min.length(); i++) {
+				if (matchIndexes[i] != -1) {
+					ms1[si] = min.charAt(i);
+					si++;
+				}
+			}
+			for (int i = 0, si = 0; i < max.length(); i++) {
+				if (matchFlags[i]) {
+					ms2[si] = max.charAt(i);
+					si++;
+				}
+			}
+			int transpositions = 0;
+			for (int mi = 0; mi < ms1.length; mi++) {
+				if (ms1[mi] != ms2[mi]) {
+					transpositions++;
+				}
+			}
+			int prefix = 0;
+			for (int mi = 0; mi < min.length(); mi++) {
+				if (s1.charAt(mi) == s2.charAt(mi)) {
+					prefix++;
+				} else {
+					break;
+				}
+			}
+			return new int[] { matches, transpositions / 2, prefix, max.length() };
+		}
+
+		float distance(String s1, String s2) {
+			int[] mtp = matches(s1, s2);
+			float m = mtp[0];
+			if (m == 0) {
+				return 0f;
+			}
+			float j = ((m / s1.length() + m / s2.length() + (m - mtp[1]) / m)) / 3;
+			float jw = j < threshold ? j : j + Math.min(0.1f, 1f / mtp[3]) * mtp[2]
+					* (1 - j);
+			return jw;
+		}
+	}
+
+	// the Dice implementation that sorted the bigrams of both strings
+	static double previousFragmentProximity(String s, String t) {
+		if (s == t)
+			return 1;
+		if (s.length() < 2 || t.length() < 2)
+			return 0;
+		int[] sPairs = bigrams(s);
+		int[] tPairs = bigrams(t);
+		Arrays.sort(sPairs);
+		Arrays.sort(tPairs);
+		int matches = 0, i = 0, j = 0;
+		while (i < sPairs.length && j < tPairs.length) {
+			if (sPairs[i] == tPairs[j]) {
+				matches += 2;
+				i++;
+				j++;
+			} else if (sPairs[i] < tPairs[j])
+				i++;
+			else
+				j++;
+		}
+		return (double) matches / (sPairs.length + tPairs.length);
+	}
+
+	private static int[] bigrams(String s) {
+		int[] pairs = new int[s.length() - 1];
+		for (int i = 0; i < pairs.length; i++) {
+			pairs[i] = s.charAt(i) << 16 | s.charAt(i + 1);
+		}
+		return pairs;
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		Options opt = new OptionsBuilder()
+				.include(ProximityBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.warmupIterations(5)
+				.measurementIterations(5)
+				.forks(1)
+				.build();
+
+		new Runner(opt).run();
+	}
+}
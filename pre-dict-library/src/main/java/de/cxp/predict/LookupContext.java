@@ -0,0 +1,276 @@
+package de.cxp.predict;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.cxp.predict.PreDict.DistanceFilterType;
+import de.cxp.predict.api.DictionaryItem;
+import de.cxp.predict.api.SuggestItem;
+import de.cxp.predict.common.DistanceFilter;
+import de.cxp.predict.common.EditDistanceLowerBound;
+import de.cxp.predict.common.LetterSignatureBound;
+import de.cxp.predict.common.WeightedDamerauLevenshtein;
+import de.cxp.predict.index.DeleteGenerator;
+import de.cxp.predict.index.FanOutSelection;
+
+/**
+ * Reusable working memory of a lookup: the candidate queue, the numbers of the
+ * already checked words, the distance filters and the rows of the distance
+ * calculation, the heap of the best suggestions, the selected words of
+ * fragments beyond the fan-out budget and the suggestion items. After a few
+ * lookups it has grown to the size of the longest search word, so further
+ * lookups don't allocate more than their result.
+ *
+ * {@link PreDict} keeps one context per thread. A context that is passed to
+ * {@link PreDict#findSimilarWords(String, LookupContext)} must not be used by
+ * several threads at the same time, but it can be shared between PreDict
+ * instances.
+ */
+public final class LookupContext {
+
+	final DeleteGenerator candidates = new DeleteGenerator();
+
+	final DictionaryItem reusableItem = new DictionaryItem();
+
+	final List<SuggestItem> suggestions = new ArrayList<>();
+
+	final SuggestionHeap topSuggestions = new SuggestionHeap();
+
+	final FanOutSelection fanOutSelection = new FanOutSelection();
+
+	// by the ordinal of their type, created when they are used first
+	private final DistanceFilter[] distanceFilters = new DistanceFilter[DistanceFilterType.values().length];
+
+	private double[] distanceRows = new double[0];
+
+	// statistics over all lookups with this context
+	private long checkedDistances = 0;
+	private long filteredDistances = 0;
+	private final long[] rejectedDistances = new long[DistanceFilterType.values().length];
+	private long truncatedFragments = 0;
+	private long skippedWords = 0;
+	private long filteredProbes = 0;
+	private long falsePositiveProbes = 0;
+
+	private final List<SuggestItem> itemPool = new ArrayList<>();
+	private int usedItems = 0;
+
+	// the checked word numbers are the keys whose stamp equals the current
+	// epoch, so all of them are dropped by increasing the epoch
+	private int[] checkedWords = new int[64];
+	private int[] stamps = new int[64];
+	private int checkedWordCount = 0;
+	private int epoch = 1;
+
+	/**
+	 * Prepares the context for the next lookup.
+	 */
+	void reset() {
+		candidates.clear();
+		suggestions.clear();
+		usedItems = 0;
+		checkedWordCount = 0;
+		if (++epoch == 0) {
+			Arrays.fill(stamps, 0);
+			epoch = 1;
+		}
+	}
+
+	/**
+	 * @return a suggestion item with all values reset, which is reused by
+	 *         the next lookup
+	 */
+	SuggestItem newSuggestItem() {
+		if (usedItems == itemPool.size()) itemPool.add(new SuggestItem());
+		SuggestItem item = itemPool.get(usedItems++);
+		item.term = "";
+		item.count = 0;
+		item.distance = 0;
+		item.wordFrequency = 0;
+		item.editProximity = 0;
+		item.phoneticProximity = 0;
+		item.fragmentProximity = 0;
+		item.prefixProximity = 0;
+		item.proximity = 0;
+		item.features = null;
+		return item;
+	}
+
+	/**
+	 * Sets the search word as pattern of the given filters.
+	 *
+	 * @param types
+	 * @param searchWord
+	 */
+	void setPattern(DistanceFilterType[] types, String searchWord) {
+		for (DistanceFilterType type : types) {
+			DistanceFilter filter = distanceFilters[type.ordinal()];
+			if (filter == null) {
+				filter = type == DistanceFilterType.letterSignature ? new LetterSignatureBound()
+						: new EditDistanceLowerBound();
+				distanceFilters[type.ordinal()] = filter;
+			}
+			filter.setPattern(searchWord);
+		}
+	}
+
+	/**
+	 * Runs the filters in the given order, until one of them rejects the
+	 * candidate, and counts the checked and rejected candidates. See
+	 * {@link DistanceFilter#exceeds(int, int, CharSequence, int, int, int, boolean)}.
+	 *
+	 * @return true if a filter rejected the candidate
+	 */
+	boolean exceeds(DistanceFilterType[] types, int aStart, int aEnd, CharSequence b, int bStart, int bEnd,
+			int maxEdits, boolean countReplacements) {
+		checkedDistances++;
+		for (DistanceFilterType type : types) {
+			int filterNr = type.ordinal();
+			if (distanceFilters[filterNr].exceeds(aStart, aEnd, b, bStart, bEnd, maxEdits, countReplacements)) {
+				rejectedDistances[filterNr]++;
+				filteredDistances++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param length
+	 *        length of the search word
+	 * @return the rows for {@link WeightedDamerauLevenshtein}
+	 */
+	double[] distanceRows(int length) {
+		int size = WeightedDamerauLevenshtein.rowsSize(length);
+		if (distanceRows.length < size) distanceRows = new double[Math.max(size, 2 * distanceRows.length)];
+		return distanceRows;
+	}
+
+	/**
+	 * @return number of candidates whose distance had to be calculated in
+	 *         detail, summed over all lookups with this context
+	 */
+	public long getCheckedDistances() {
+		return checkedDistances;
+	}
+
+	/**
+	 * @return number of the checked distances that were rejected by one of
+	 *         the distance filters without calculating them
+	 */
+	public long getFilteredDistances() {
+		return filteredDistances;
+	}
+
+	/**
+	 * @param type
+	 * @return number of the checked distances that were rejected by the given
+	 *         filter. A filter only sees the candidates that passed the filters
+	 *         before it.
+	 */
+	public long getRejectedDistances(DistanceFilterType type) {
+		return rejectedDistances[type.ordinal()];
+	}
+
+	/**
+	 * Counts a fragment whose words were truncated to the fan-out budget.
+	 *
+	 * @param skippedWords
+	 *        number of words that are not checked
+	 */
+	void countTruncated(int skippedWords) {
+		truncatedFragments++;
+		this.skippedWords += skippedWords;
+	}
+
+	/**
+	 * @return number of fragments whose words were truncated to the fan-out
+	 *         budget, summed over all lookups with this context
+	 */
+	public long getTruncatedFragments() {
+		return truncatedFragments;
+	}
+
+	/**
+	 * @return number of words of the truncated fragments, that were not
+	 *         checked
+	 */
+	public long getSkippedWords() {
+		return skippedWords;
+	}
+
+	void countFilteredProbe() {
+		filteredProbes++;
+	}
+
+	void countFalsePositiveProbe() {
+		falsePositiveProbes++;
+	}
+
+	/**
+	 * @return number of candidates that the fragment filter rejected, so the
+	 *         index was not probed for them, summed over all lookups with this
+	 *         context
+	 */
+	public long getFilteredProbes() {
+		return filteredProbes;
+	}
+
+	/**
+	 * @return number of candidates that passed the fragment filter, but are
+	 *         not in the index
+	 */
+	public long getFalsePositiveProbes() {
+		return falsePositiveProbes;
+	}
+
+	/**
+	 * @return share of the candidates absent from the index, that passed the
+	 *         fragment filter. 0 if there were none.
+	 */
+	public double getFalsePositiveRate() {
+		long absent = filteredProbes + falsePositiveProbes;
+		return absent == 0 ? 0 : (double) falsePositiveProbes / absent;
+	}
+
+	/**
+	 * @param wordNr
+	 * @return true if the word was not checked before during this lookup
+	 */
+	boolean checkWord(int wordNr) {
+		int mask = checkedWords.length - 1;
+		int slot = mix(wordNr) & mask;
+		while (stamps[slot] == epoch) {
+			if (checkedWords[slot] == wordNr) return false;
+			slot = (slot + 1) & mask;
+		}
+		checkedWords[slot] = wordNr;
+		stamps[slot] = epoch;
+		// keep the load factor below 0.5
+		if (++checkedWordCount * 2 > checkedWords.length) grow();
+		return true;
+	}
+
+	private void grow() {
+		int[] oldWords = checkedWords;
+		int[] oldStamps = stamps;
+		checkedWords = new int[oldWords.length * 2];
+		stamps = new int[oldWords.length * 2];
+		int mask = checkedWords.length - 1;
+		for (int i = 0; i < oldWords.length; i++) {
+			if (oldStamps[i] != epoch) continue;
+			int slot = mix(oldWords[i]) & mask;
+			while (stamps[slot] == epoch) {
+				slot = (slot + 1) & mask;
+			}
+			checkedWords[slot] = oldWords[i];
+			stamps[slot] = epoch;
+		}
+	}
+
+	private static int mix(int wordNr) {
+		int h = wordNr * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
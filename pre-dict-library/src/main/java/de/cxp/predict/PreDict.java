@@ -1,17 +1,38 @@
 package de.cxp.predict;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 
-import com.google.common.collect.Ordering;
+import com.google.common.collect.Iterators;
 
 import de.cxp.predict.api.DictionaryItem;
 import de.cxp.predict.api.PreDictSettings;
+import de.cxp.predict.api.QueryOptions;
 import de.cxp.predict.api.SuggestItem;
+import de.cxp.predict.api.TermCount;
+import de.cxp.predict.common.WeightedDamerauLevenshtein;
 import de.cxp.predict.customizing.PreDictCustomizing;
+import de.cxp.predict.index.CompactIndex;
+import de.cxp.predict.index.DeleteGenerator;
+import de.cxp.predict.index.DictionaryIndex;
+import de.cxp.predict.index.FragmentFilter;
+import de.cxp.predict.index.FrozenIndex;
+import de.cxp.predict.index.HashedIndex;
+import de.cxp.predict.index.HighFanOutFragments;
+import de.cxp.predict.index.IndexSnapshot;
+import de.cxp.predict.index.LiveIndex;
+import de.cxp.predict.index.MappedIndex;
+import de.cxp.predict.index.ParallelIndexer;
+import de.cxp.predict.index.RareWordCounts;
+import de.cxp.predict.index.StringMapIndex;
+import de.cxp.predict.index.WordFeatureStore;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
 
 /**
  * Based on a SymSpell Port
@@ -42,17 +63,193 @@ public class PreDict {
 	private final PreDictCustomizing customizing;
 
 	public PreDict(PreDictCustomizing customizing) {
+		this(customizing, null, null);
+	}
+
+	/**
+	 * @param customizing
+	 * @param index
+	 *        index to search, a new one is created if it's null
+	 * @param source
+	 *        instance that built the index, whose word features and selected
+	 *        fragments are shared. Null if the index was loaded.
+	 */
+	private PreDict(PreDictCustomizing customizing, DictionaryIndex index, PreDict source) {
 		this.customizing = customizing;
 		
 		// copy the settings to ensure a immutable object
 		PreDictSettings settings = customizing.getSettings();
+		indexSettings = source != null ? source.indexSettings : settings;
 		editDistanceMax = settings.getEditDistanceMax();
+		minLengthsPerDistance = new int[settings.getMinLengthsPerDistance().size()];
+		for (int i = 0; i < minLengthsPerDistance.length; i++) {
+			minLengthsPerDistance[i] = settings.getMinLengthsPerDistance().get(i);
+			if (minLengthsPerDistance[i] < 1 || i > 0 && minLengthsPerDistance[i] < minLengthsPerDistance[i - 1]) {
+				throw new IllegalArgumentException("minLengthsPerDistance must be positive and ascending");
+			}
+		}
 		accuracyLevel = settings.getAccuracyLevel();
 		topK = settings.getTopK();
 		deletionWeight = settings.getDeletionWeight();
 		insertionWeight = settings.getInsertionWeight();
 		transpositionWeight = settings.getTranspositionWeight();
 		replaceWeight = settings.getReplaceWeight();
+		damerauLevenshtein = new WeightedDamerauLevenshtein(deletionWeight, insertionWeight, replaceWeight,
+				transpositionWeight, customizing::getReplacementDistance);
+		// the first column of the distance matrix is unweighted
+		double minWeight = Math.min(Math.min(deletionWeight, insertionWeight), Math.min(transpositionWeight, 1));
+		double minReplaceWeight = replaceWeight * customizing.getMinReplacementDistance();
+		replacementsCounted = minReplaceWeight > 0;
+		minEditWeight = replacementsCounted ? Math.min(minWeight, minReplaceWeight) : minWeight;
+		exactDistances = customizing.adjustsDistances();
+		// the filters reject candidates above the cutoff, so they are not
+		// used if the distances have to be exact
+		distanceFilters = minEditWeight > 0 && !exactDistances
+				? settings.getDistanceFilters().toArray(new DistanceFilterType[0])
+				: new DistanceFilterType[0];
+		prefixLength = settings.getPrefixLength();
+		if (prefixLength <= editDistanceMax) {
+			throw new IllegalArgumentException("prefixLength has to be greater than editDistanceMax");
+		}
+		minCountForSuggestion = settings.getMinCountForSuggestion();
+		if (minCountForSuggestion < 1) {
+			throw new IllegalArgumentException("minCountForSuggestion must be positive");
+		}
+		maxFanOut = settings.getMaxFanOut();
+		if (maxFanOut < 0) {
+			throw new IllegalArgumentException("maxFanOut must not be negative");
+		}
+		fragmentFilterBitsPerKey = settings.getFragmentFilterBitsPerKey();
+		if (fragmentFilterBitsPerKey < 0) {
+			throw new IllegalArgumentException("fragmentFilterBitsPerKey must not be negative");
+		}
+		if (settings.getQueryCacheSize() < 0) {
+			throw new IllegalArgumentException("queryCacheSize must not be negative");
+		}
+		queryCache = settings.getQueryCacheSize() > 0 ? new QueryCache(settings.getQueryCacheSize()) : null;
+
+		dictionary = index != null ? index : createIndex(settings);
+		// a mapped index is not scanned at startup, its fragments are
+		// truncated by the lookups
+		if (source != null && source.maxFanOut == maxFanOut) {
+			highFanOutFragments = source.highFanOutFragments;
+		} else if (index instanceof FrozenIndex) {
+			selectHighFanOutFragments();
+		}
+		if (source != null && source.fragmentFilterBitsPerKey == fragmentFilterBitsPerKey) {
+			fragmentFilter = source.fragmentFilter;
+		} else if (index instanceof FrozenIndex) {
+			buildFragmentFilter();
+		}
+
+		if (source != null && source.wordFeatures != null && customizing.usesWordFeatures()) {
+			wordFeatures = source.wordFeatures;
+		} else if (customizing.usesWordFeatures()) {
+			wordFeatures = new WordFeatureStore();
+			// a mapped index is not copied into the heap, so its features are
+			// computed by the lookups as before
+			if (index != null && !(index instanceof MappedIndex)) {
+				for (int wordNr = 0; wordNr < index.getWordCount(); wordNr++) {
+					if (index.getCount(wordNr) > 0) wordFeatures.add(index.getWord(wordNr));
+				}
+			}
+		} else {
+			wordFeatures = null;
+		}
+	}
+
+	private static DictionaryIndex createIndex(PreDictSettings settings) {
+		boolean pruned = settings.getAccuracyLevel() != AccuracyLevel.maximum;
+		switch (settings.getIndexType()) {
+			case hashed:
+				return new HashedIndex(pruned, settings.getPrefixLength());
+			default:
+				return new StringMapIndex(pruned, settings.getPrefixLength());
+		}
+	}
+
+	/**
+	 * Loads an index that was written with {@link #save(Path)}. Only the
+	 * settings for editDistanceMax, prefixLength and accuracyLevel have to match,
+	 * the others are free to change.
+	 * 
+	 * @param path
+	 * @param customizing
+	 * @return frozen PreDict instance
+	 * @throws IOException
+	 *         if the file can't be read or has an unsupported format
+	 * @throws IllegalArgumentException
+	 *         if the index was built with incompatible settings
+	 */
+	public static PreDict load(Path path, PreDictCustomizing customizing) throws IOException {
+		return new PreDict(customizing, IndexSnapshot.read(path, customizing.getSettings()), null);
+	}
+
+	/**
+	 * Serves lookups directly from a memory mapped file, that was written with
+	 * {@link #save(Path)}. In contrast to {@link #load(Path, PreDictCustomizing)}
+	 * the index is not copied into the java heap, so startup is almost instant
+	 * and the pages of the file are shared with other processes that map the
+	 * same file.
+	 * 
+	 * @param path
+	 * @param customizing
+	 * @return frozen PreDict instance
+	 * @throws IOException
+	 *         if the file can't be read or has an unsupported format
+	 * @throws IllegalArgumentException
+	 *         if the index was built with incompatible settings
+	 */
+	public static PreDict loadMapped(Path path, PreDictCustomizing customizing) throws IOException {
+		return new PreDict(customizing, MappedIndex.open(path, customizing.getSettings()), null);
+	}
+
+	/**
+	 * Creates an instance that searches the same frozen index with the query
+	 * settings of the given customizing: its weights, topK, accuracy level,
+	 * distance filters and ranking. The index is shared and not copied, so a
+	 * single index can serve several endpoints with different settings.
+	 * 
+	 * The settings the index depends on have to be compatible: editDistanceMax
+	 * at most the one of the index, the same minLengthsPerDistance and
+	 * prefixLength and an accuracy level that is pruned like the one of the
+	 * index (all except maximum).
+	 * 
+	 * A lower editDistanceMax limits the distance of the suggestions, but the
+	 * deletes of the index still reach words that an index built with that
+	 * editDistanceMax would miss. So the results can differ from such an
+	 * index and contain other and more words.
+	 * 
+	 * @param customizing
+	 * @return frozen PreDict instance
+	 * @throws IllegalStateException
+	 *         if the index is not frozen
+	 * @throws IllegalArgumentException
+	 *         if the settings are incompatible to the index
+	 */
+	public PreDict searcher(PreDictCustomizing customizing) {
+		if (!isFrozen()) throw new IllegalStateException("can not share index since it is not frozen");
+		PreDictSettings settings = customizing.getSettings();
+		if (settings.getEditDistanceMax() > indexSettings.getEditDistanceMax()) {
+			throw new IllegalArgumentException("index was built with editDistanceMax="
+					+ indexSettings.getEditDistanceMax() + " but editDistanceMax=" + settings.getEditDistanceMax()
+					+ " is requested");
+		}
+		if (!settings.getMinLengthsPerDistance().equals(indexSettings.getMinLengthsPerDistance())) {
+			throw new IllegalArgumentException("index was built with minLengthsPerDistance="
+					+ indexSettings.getMinLengthsPerDistance() + " but minLengthsPerDistance="
+					+ settings.getMinLengthsPerDistance() + " is requested");
+		}
+		if (settings.getPrefixLength() != indexSettings.getPrefixLength()) {
+			throw new IllegalArgumentException("index was built with prefixLength=" + indexSettings.getPrefixLength()
+					+ " but prefixLength=" + settings.getPrefixLength() + " is requested");
+		}
+		boolean pruned = indexSettings.getAccuracyLevel() != AccuracyLevel.maximum;
+		if (pruned != (settings.getAccuracyLevel() != AccuracyLevel.maximum)) {
+			throw new IllegalArgumentException("index was built with accuracyLevel=" + indexSettings.getAccuracyLevel()
+					+ " which is incompatible to the requested accuracyLevel=" + settings.getAccuracyLevel());
+		}
+		return new PreDict(customizing, dictionary, this);
 	}
 
 	/**
@@ -64,9 +261,56 @@ public class PreDict {
 		topHit, fast, maximum;
 	}
 
+	/**
+	 * map = the original dictionary with String keys
+	 * hashed = primitive table with 64 bit hashes as keys, that requires a
+	 * fraction of the memory
+	 */
+	public static enum IndexType {
+		map, hashed;
+	}
+
+	/**
+	 * Lower bounds that reject candidates before their weighted distance is
+	 * calculated, in the order they are configured. Both never reject a
+	 * candidate within the maximum distance.
+	 * 
+	 * letterSignature = chars that occur in only one of the words, compared as
+	 * 64 bit signatures (see LetterSignatureBound)
+	 * editCount = bit-parallel count of the edits (see EditDistanceLowerBound)
+	 */
+	public static enum DistanceFilterType {
+		letterSignature, editCount;
+	}
+
+	// the settings the index was built with, which differ from the settings
+	// of the customizing for instances created by searcher(..)
+	private final PreDictSettings indexSettings;
+
 	private final AccuracyLevel accuracyLevel;
 	
 	private final int editDistanceMax;
+
+	// minimum length of words and search words for each distance, see
+	// maxDistance(int). Empty if all lengths allow editDistanceMax.
+	private final int[] minLengthsPerDistance;
+
+	// only the first n chars of words and search words are used to create
+	// the deletes. This limits the number of fragments of long words, which
+	// are still verified against their full length.
+	private final int prefixLength;
+
+	// words are indexed with their fragments only once their count reaches
+	// this threshold. Until then, they are only counted in rareWords.
+	private final int minCountForSuggestion;
+
+	// at most that many words of a fragment are checked by a lookup, the most
+	// frequent ones. This bounds the cost of short search words, whose
+	// fragments are shared by thousands of words. 0 checks all words.
+	private final int maxFanOut;
+
+	// size of the Bloom filter of a frozen index, 0 if there is none
+	private final int fragmentFilterBitsPerKey;
 	
 	// limit suggestion list to topK entries
 	private final int topK; 
@@ -80,182 +324,617 @@ public class PreDict {
 
 	private final double transpositionWeight;
 
-	private final Comparator<SuggestItem> distanceCountComparator = new Comparator<SuggestItem>() {
-		public int compare(SuggestItem x, SuggestItem y) {
-			return (2 * Double.compare(x.distance, y.distance) - Integer.compare(x.count, y.count));
-		}
-	};
-	
+	private final WeightedDamerauLevenshtein damerauLevenshtein;
+
+	// every edit weighs at least minEditWeight, so candidates that need more
+	// edits than the maximum distance allows are rejected by the distance
+	// filters before the weighted calculation. Replacements are only counted
+	// as edits, if their weight can't be 0.
+	private final double minEditWeight;
+
+	private final boolean replacementsCounted;
+
+	private final DistanceFilterType[] distanceFilters;
+
+	// the customizing adjusts the distances, so the detailed distances are
+	// calculated without cutoff and it can lower any of them
+	private final boolean exactDistances;
+
 	// Dictionary that contains both the original words and the deletes derived
-	// from them. A term might be both word and delete from another word at the
-	// same time.
-	// For space reduction a item might be either of type DictionaryItem or int.
-	// A DictionaryItem is used for word, word/delete, and delete with multiple
-	// suggestions. Int is used for deletes with a single suggestion (the
-	// majority of entries).
-	private final HashMap<String, Object> dictionary = new HashMap<String, Object>();
+	// from them.
+	private DictionaryIndex dictionary;
+
+	// counts of the words below minCountForSuggestion, created with the first
+	// of them
+	private RareWordCounts rareWords;
+
+	// the selected words of the fragments beyond maxFanOut, once the index is
+	// frozen. Other indexes select them during the lookup.
+	private volatile HighFanOutFragments highFanOutFragments;
+
+	// the keys of the index once it is frozen, to skip the probes of absent
+	// terms. Mapped and live indexes are probed directly.
+	private volatile FragmentFilter fragmentFilter;
+
+	// results of frequent search words, only if queryCacheSize is set. Every
+	// instance has its own, since the results depend on its settings.
+	private final QueryCache queryCache;
+
+	// increased after every change of the index, so the cached results of
+	// former versions are not used anymore
+	private volatile long indexVersion = 0;
 
-	// List of unique words. By using the suggestions (int) as index for this
-	// list they are translated into the original String.
-	private final List<String> wordlist = new ArrayList<String>();
+	// features of the words for the final ranking, only if the customizing
+	// uses them
+	private final WordFeatureStore wordFeatures;
 
-	private int maxlength = 0; // maximum dictionary term length
+	// scratch space for the deletes of indexed words
+	private final ThreadLocal<DeleteGenerator> deleteGenerators = ThreadLocal.withInitial(DeleteGenerator::new);
 
+	private final ThreadLocal<LookupContext> lookupContexts = ThreadLocal.withInitial(LookupContext::new);
+
+	// chars of the indexed words, needed to find the words that replace a
+	// removed word as suggestion. Only created on the first removal.
+	private final BitSet alphabet = new BitSet();
+	private char[] alphabetChars = new char[0];
+	private int alphabetWordCount = 0;
 
 	public boolean indexWord(String word) {
-		word = customizing.cleanIndexWord(word);
-		DictionaryItem value = appendToDictionary(word);
-
-		// edits/suggestions are created only once, no matter how often a word
-		// occurs. they are created only as soon as the word occurs in the
-		// corpus, even if the same term existed before in the dictionary as an
-		// edit from another word.
-		// a threshold might be specified, when a term occurs so frequently in
-		// the corpus that it is considered a valid word for spelling correction
-		if (value.count == 1) {
-			indexFragments(word);
+		return indexWord(word, 1);
+	}
+
+	/**
+	 * Indexes the word as if it occurred count times.
+	 * 
+	 * @param word
+	 * @param count
+	 *        positive number of occurrences
+	 * @return true
+	 */
+	public boolean indexWord(String word, int count) {
+		if (isFrozen()) throw new IllegalStateException("can not index word since index is frozen");
+		checkCount(word, count);
+		String cleanedWord = customizing.cleanIndexWord(word);
+		update(() -> {
+			// edits/suggestions are created only once, no matter how often a
+			// word occurs. they are created only as soon as the word occurs in
+			// the corpus, even if the same term existed before in the
+			// dictionary as an edit from another word.
+			// with minCountForSuggestion a term has to occur that frequently
+			// in the corpus, before it is considered a valid word for spelling
+			// correction
+			if (addCount(cleanedWord, count)) {
+				indexFragments(cleanedWord);
+			}
+		});
+		return true;
+	}
+
+	/**
+	 * Counts the word, either in the index or in the rare words as long as it
+	 * did not reach minCountForSuggestion. The features of new words are
+	 * computed right away.
+	 * 
+	 * @return true if the word is new to the index, so its fragments have to
+	 *         be created
+	 */
+	private boolean addCount(String word, int count) {
+		if (minCountForSuggestion > 1 && !isSuggestion(word)) {
+			if (rareWords == null) rareWords = new RareWordCounts();
+			count = rareWords.add(word, count);
+			if (count < minCountForSuggestion) return false;
+			rareWords.set(word, 0);
 		}
+		if (dictionary.addCount(word, count) > 0) return false;
+		if (wordFeatures != null) wordFeatures.add(word);
 		return true;
 	}
 
-	private DictionaryItem appendToDictionary(String word) {
-		DictionaryItem value;
-		Object dictionaryEntry = dictionary.get(word);
+	private boolean isSuggestion(String word) {
+		int wordNr = dictionary.getWordNr(word);
+		return wordNr >= 0 && dictionary.getCount(wordNr) > 0;
+	}
 
-		// known word or fragment
-		if (dictionaryEntry != null) {
-			value = asDictionaryItem(dictionaryEntry);
+	/**
+	 * Indexes all terms with their counts, like
+	 * {@link #indexWord(String, int)} does. The terms are consumed one after
+	 * another, so they can be streamed from a file of any size. With
+	 * {@link #enableLiveUpdates()} all terms become visible at once.
+	 * 
+	 * @param terms
+	 * @return this instance
+	 */
+	public PreDict indexAll(Iterator<TermCount> terms) {
+		update(() -> {
+			while (terms.hasNext()) {
+				TermCount term = terms.next();
+				indexWord(term.getTerm(), term.getCount());
+			}
+		});
+		return this;
+	}
 
-			// replace integer entry with DictionaryItem object
-			if (dictionaryEntry instanceof Integer) {
-				dictionary.put(word, value);
+	/**
+	 * Indexes all terms with their counts like {@link #indexAll(Iterator)},
+	 * but the fragments are created by the given number of threads. The
+	 * result is exactly the same.
+	 * 
+	 * @param terms
+	 * @param threads
+	 * @return this instance
+	 */
+	public PreDict indexAll(Iterator<TermCount> terms, int threads) {
+		if (isFrozen()) throw new IllegalStateException("can not index words since index is frozen");
+		update(() -> {
+			try (ParallelIndexer indexer = new ParallelIndexer(dictionary, this::getFragments, threads)) {
+				while (terms.hasNext()) {
+					TermCount term = terms.next();
+					checkCount(term.getTerm(), term.getCount());
+					String word = customizing.cleanIndexWord(term.getTerm());
+					// words and counts are added right away, only the
+					// fragments are deferred
+					if (addCount(word, term.getCount())) {
+						indexer.add(word, dictionary.addWord(word));
+					}
+				}
+				indexer.flush();
 			}
+		});
+		return this;
+	}
+
+	/**
+	 * Removes the word with all its occurrences.
+	 * 
+	 * @param word
+	 * @return true if the word was indexed
+	 */
+	public boolean removeWord(String word) {
+		return decrement(word, Integer.MAX_VALUE) > 0;
+	}
+
+	/**
+	 * Decreases the count of the word. Once it drops to 0, the word is removed
+	 * like with {@link #removeWord(String)}.
+	 * 
+	 * @param word
+	 * @param count
+	 *        positive number of occurrences to remove
+	 * @return the remaining count of the word
+	 */
+	public int decrementWord(String word, int count) {
+		checkCount(word, count);
+		return Math.max(0, decrement(word, count) - count);
+	}
+
+	private int decrement(String word, int count) {
+		if (isFrozen()) throw new IllegalStateException("can not remove word since index is frozen");
+		String cleanedWord = customizing.cleanIndexWord(word);
+		int[] previousCount = new int[1];
+		update(() -> {
+			int wordNr = dictionary.getWordNr(cleanedWord);
+			if (wordNr < 0 || dictionary.getCount(wordNr) == 0) {
+				if (rareWords != null) {
+					previousCount[0] = rareWords.get(cleanedWord);
+					rareWords.set(cleanedWord, Math.max(0, previousCount[0] - count));
+				}
+				return;
+			}
+			int remainingCount = Math.max(0, dictionary.getCount(wordNr) - count);
+			if (remainingCount >= minCountForSuggestion) {
+				previousCount[0] = dictionary.removeCount(cleanedWord, count);
+				return;
+			}
+			// a word that falls below the threshold is no suggestion anymore
+			previousCount[0] = dictionary.removeCount(cleanedWord, Integer.MAX_VALUE);
+			removeFragments(cleanedWord, wordNr);
+			if (wordFeatures != null) wordFeatures.remove(cleanedWord);
+			if (rareWords != null) rareWords.set(cleanedWord, remainingCount);
+		});
+		return previousCount[0];
+	}
+
+	/**
+	 * Frees the space of removed words. Afterwards the index uses as much
+	 * memory as if the remaining words were indexed from scratch.
+	 * 
+	 * @return this instance
+	 */
+	public PreDict compact() {
+		if (!isFrozen()) {
+			update(dictionary::compact);
+			// the word numbers changed
+			alphabetWordCount = 0;
+		}
+		return this;
+	}
 
-			// prevent overflow
-			if (value.count < Integer.MAX_VALUE) value.count++;
+	// the version is increased once the changes are visible to lookups. Nested
+	// updates increase it again, when the outer one is done.
+	private void update(Runnable changes) {
+		try {
+			dictionary.update(changes);
+		} finally {
+			indexVersion++;
 		}
-		// this is a new word
-		else if (wordlist.size() < Integer.MAX_VALUE) {
-			value = new DictionaryItem();
-			value.count++;
-			dictionary.put(word, value);
-			if (word.length() > maxlength) maxlength = word.length();
-		} else {
-			throw new IllegalStateException("can not index word since wordlist reached limit of Integer.MAX_VALUE");
+	}
+
+	private static void checkCount(String word, int count) {
+		if (count < 1) throw new IllegalArgumentException("count of '" + word + "' must be positive but is " + count);
+	}
+
+	/**
+	 * Indexes all words in the order of the collection, like
+	 * {@link #indexWord(String)} does, but the fragments are created by the
+	 * given number of threads. The result is exactly the same.
+	 * 
+	 * @param words
+	 * @param threads
+	 * @return this instance
+	 */
+	public PreDict buildParallel(Collection<String> words, int threads) {
+		return indexAll(Iterators.transform(words.iterator(), word -> new TermCount(word, 1)), threads);
+	}
+
+	/**
+	 * Turns the index into a compact read-only layout, that is faster to
+	 * search and uses less memory. Afterwards no more words can be indexed.
+	 * Should be called once all words are indexed and before the instance is
+	 * shared with other threads. The counts of the words below
+	 * minCountForSuggestion are dropped.
+	 * 
+	 * @return this instance
+	 */
+	public PreDict freeze() {
+		freezeIndex();
+		// words below minCountForSuggestion can't become suggestions anymore
+		rareWords = null;
+		return this;
+	}
+
+	private void freezeIndex() {
+		if (!isFrozen()) {
+			dictionary = FrozenIndex.of(compact().dictionary);
+			selectHighFanOutFragments();
+			buildFragmentFilter();
+		}
+	}
+
+	private void selectHighFanOutFragments() {
+		if (maxFanOut > 0) highFanOutFragments = HighFanOutFragments.of((FrozenIndex) dictionary, maxFanOut);
+	}
+
+	private void buildFragmentFilter() {
+		if (fragmentFilterBitsPerKey > 0) {
+			fragmentFilter = FragmentFilter.of((FrozenIndex) dictionary, fragmentFilterBitsPerKey);
+		}
+	}
+
+	/**
+	 * Writes the index into a binary file, that can be loaded again with
+	 * {@link #load(Path, PreDictCustomizing)}. If the index is not frozen, a
+	 * frozen copy of it is written.
+	 * 
+	 * The file is replaced at once when it's complete, so an existing
+	 * snapshot can be refreshed while other instances map it with
+	 * {@link #loadMapped(Path, PreDictCustomizing)}. They keep serving the
+	 * former file until they are loaded again.
+	 * 
+	 * @param path
+	 * @throws IOException
+	 */
+	public void save(Path path) throws IOException {
+		IndexSnapshot.write(path, FrozenIndex.of(dictionary), indexSettings);
+	}
+
+	/**
+	 * Allows to index more words while other threads search this instance.
+	 * The words indexed so far are frozen, new words are added in small
+	 * segments. Each call of {@link #indexWord(String, int)} or
+	 * {@link #indexAll(Iterator)} becomes visible at once, lookups never wait
+	 * for it and always see a consistent index. Indexing itself is still
+	 * done by one thread at a time.
+	 * 
+	 * Should be called before the instance is shared with other threads.
+	 * {@link #freeze()} ends the live updates.
+	 * 
+	 * @return this instance
+	 */
+	public PreDict enableLiveUpdates() {
+		if (!(dictionary instanceof LiveIndex)) {
+			freezeIndex();
+			dictionary = new LiveIndex((CompactIndex) dictionary, this::getFragments,
+					accuracyLevel != AccuracyLevel.maximum, prefixLength);
+			highFanOutFragments = null;
+			fragmentFilter = null;
 		}
-		return value;
+		return this;
+	}
+
+	public boolean isFrozen() {
+		return dictionary instanceof CompactIndex;
 	}
 
 	private void indexFragments(String word) {
-		wordlist.add(word);
-		int wordNr = wordlist.size() - 1;
+		int wordNr = dictionary.addWord(word);
 
 		// create deletes aka fragements
-		for (String fragment : getEdits(word, 0, new HashSet<String>())) {
-			Object dictionaryEntry;
-			dictionaryEntry = dictionary.get(fragment);
-			if (dictionaryEntry != null) {
-				// scenario where this entry already exists:
-				// 1. word == deletes(anotherWord)
-				// 2. deletes(word) == deletes(anotherWord)
-				if (dictionaryEntry instanceof Integer) {
-					DictionaryItem dictItem = asDictionaryItem(dictionaryEntry);
-					dictionary.put(fragment, dictItem);
-					if (wordNr != (int) dictionaryEntry)
-						addLowestDistance(dictItem, word, wordNr, fragment);
-				} else if (!((DictionaryItem) dictionaryEntry).suggestions.contains(wordNr))
-					addLowestDistance((DictionaryItem) dictionaryEntry, word, wordNr, fragment);
-			} else {
-				dictionary.put(fragment, wordNr);
+		DeleteGenerator fragments = deleteGenerators.get();
+		for (int i = generateFragments(word, fragments); i < fragments.size(); i++) {
+			dictionary.addFragment(fragments.get(i), fragments.hash(i), wordNr);
+		}
+	}
+
+	private void removeFragments(String word, int wordNr) {
+		// longer fragments are restored first, since the shorter ones are
+		// restored from them
+		List<String> fragments = getFragments(word);
+		int length = Math.min(word.length(), prefixLength);
+		for (String fragment : fragments) {
+			if (dictionary.removeFragment(fragment, wordNr)
+					&& accuracyLevel != AccuracyLevel.maximum
+					&& length - fragment.length() < maxDistance(word.length())) {
+				restoreFragment(fragment);
 			}
 		}
 	}
 
-	private DictionaryItem asDictionaryItem(Object entry) {
-		if (entry instanceof DictionaryItem) {
-			return (DictionaryItem) entry;
-		} else if (entry instanceof Integer) {
-			// if value is an integer, word is also a fragment from another word
-			// => append fragment to suggestions
-			DictionaryItem dictItem = new DictionaryItem();
-			dictItem.suggestions.add((int) entry);
-			return dictItem;
-		} else {
-			throw new IllegalStateException("unknown entry type found: " + entry.getClass().getSimpleName());
-		}
-	}
-
-	// inexpensive and language independent: only deletes, no transposes +
-	// replaces + inserts
-	// replaces and inserts are expensive and language dependent (Chinese has
-	// 70,000 Unicode Han characters)
-	private HashSet<String> getEdits(String word, int editDistance, HashSet<String> deletes) {
-		editDistance++;
-		if (word.length() > 1) {
-			for (int i = 0; i < word.length(); i++) {
-				// delete ith character
-				String delete = word.substring(0, i) + word.substring(i + 1);
-				if (deletes.add(delete)) {
-					// recursion, if maximum edit distance not yet reached
-					if (editDistance < editDistanceMax) getEdits(delete, editDistance, deletes);
+	/**
+	 * The pruned index only keeps the words of the lowest distance to a
+	 * fragment. If the last of them is removed, the words of the next distance
+	 * have to be added again. Each of them has a fragment with one more char
+	 * than the given fragment at a distance one lower, where it's a suggestion
+	 * of the lowest distance, or it's such a fragment itself.
+	 * 
+	 * Fragments are at most prefixLength chars long, so a fragment of that
+	 * length has no longer ones. A word key with one more char is not a
+	 * prefix, the fragment is no delete of it.
+	 */
+	private void restoreFragment(String fragment) {
+		if (fragment.length() >= prefixLength) return;
+		TIntArrayList words = new TIntArrayList();
+		int lowestDistance = editDistanceMax;
+		DictionaryItem reusableItem = new DictionaryItem();
+		char[] chars = new char[fragment.length() + 1];
+		for (int i = 0; i <= fragment.length(); i++) {
+			fragment.getChars(0, i, chars, 0);
+			fragment.getChars(i, fragment.length(), chars, i + 1);
+			for (char c : getAlphabet()) {
+				// inserting a char before the same char gives the same string
+				if (i < fragment.length() && c == fragment.charAt(i)) continue;
+				chars[i] = c;
+				String longer = new String(chars);
+
+				DictionaryItem item = dictionary.read(longer, reusableItem);
+				if (item == null) continue;
+				int wordNr = item.count > 0 ? item.wordNr : -1;
+				for (int j = -1; j < item.suggestions.size(); j++) {
+					int suggestion = j < 0 ? wordNr : item.suggestions.get(j);
+					if (suggestion < 0 || dictionary.getCount(suggestion) == 0) continue;
+					String word = dictionary.getWord(suggestion);
+					int distance = Math.min(word.length(), prefixLength) - fragment.length();
+					// the fragment is too short for the length of that word
+					if (distance > lowestDistance || distance > maxDistance(word.length())) continue;
+					if (distance < lowestDistance) {
+						words.clear();
+						lowestDistance = distance;
+					}
+					if (!words.contains(suggestion)) words.add(suggestion);
 				}
 			}
 		}
-		return deletes;
+		words.sort();
+		for (int i = 0; i < words.size(); i++) {
+			dictionary.addFragment(fragment, words.get(i));
+		}
 	}
 
-	// save some time and space
-	private void addLowestDistance(DictionaryItem item, String word, int wordNr, String fragment) {
-		int indexedDistance = item.suggestions.size() > 0
-				? wordlist.get(item.suggestions.get(0)).length() - fragment.length()
-				: -1;
-		int fragmentDistance = word.length() - fragment.length();
+	private char[] getAlphabet() {
+		int wordCount = dictionary.getWordCount();
+		if (alphabetWordCount < wordCount) {
+			for (int wordNr = alphabetWordCount; wordNr < wordCount; wordNr++) {
+				String word = dictionary.getWord(wordNr);
+				for (int i = 0; i < Math.min(word.length(), prefixLength); i++) {
+					alphabet.set(word.charAt(i));
+				}
+			}
+			alphabetWordCount = wordCount;
+			if (alphabetChars.length != alphabet.cardinality()) {
+				alphabetChars = new char[alphabet.cardinality()];
+				int n = 0;
+				for (int c = alphabet.nextSetBit(0); c >= 0; c = alphabet.nextSetBit(c + 1)) {
+					alphabetChars[n++] = (char) c;
+				}
+			}
+		}
+		return alphabetChars;
+	}
 
-		// remove all existing suggestions (of higher distance) if this word has
-		// a lower distance (only at recallLevel < 2)
-		if ((accuracyLevel.ordinal() < 2) && (indexedDistance > fragmentDistance)) {
-			item.suggestions.clear();
+	/**
+	 * @return the distinct fragments of the word, longest first
+	 */
+	private List<String> getFragments(String word) {
+		DeleteGenerator deletes = deleteGenerators.get();
+		int first = generateFragments(word, deletes);
+		List<String> fragments = new ArrayList<>(deletes.size() - first);
+		for (int i = first; i < deletes.size(); i++) {
+			fragments.add(deletes.toString(i));
+		}
+		return fragments;
+	}
+
+	private int maxDistance(int length) {
+		return maxDistance(length, editDistanceMax);
+	}
+
+	/**
+	 * @param length
+	 *        length of a word or search word
+	 * @param editDistanceMax
+	 * @return the distance that is allowed for that length: the number of
+	 *         minLengthsPerDistance it reaches, at most editDistanceMax
+	 */
+	private int maxDistance(int length, int editDistanceMax) {
+		if (minLengthsPerDistance.length == 0) return editDistanceMax;
+		int distance = 0;
+		while (distance < editDistanceMax && distance < minLengthsPerDistance.length
+				&& length >= minLengthsPerDistance[distance]) {
+			distance++;
 		}
+		return distance;
+	}
 
-		// if recall level is 2, add this word anyways
-		// otherwise only add it if it has a similar or lower distance
-		// then the indexed words
-		if ((accuracyLevel.ordinal() == 2)
-				|| (item.suggestions.size() == 0)
-				|| (indexedDistance >= fragmentDistance)) {
-			item.suggestions.add(wordNr);
+	/**
+	 * Fills the generator with the prefix of the word and its deletes.
+	 * 
+	 * @return the number of the first fragment: the prefix itself is a
+	 *         fragment, if the word was longer
+	 */
+	private int generateFragments(String word, DeleteGenerator deletes) {
+		// inexpensive and language independent: only deletes, no transposes +
+		// replaces + inserts
+		// replaces and inserts are expensive and language dependent (Chinese
+		// has 70,000 Unicode Han characters)
+		deletes.clear();
+		int length = Math.min(word.length(), prefixLength);
+		deletes.add(word, 0, length);
+		// the deletes are generated breadth first, so they get shorter and
+		// shorter
+		int distance = maxDistance(word.length());
+		for (int i = 0; i < deletes.size() && length - deletes.length(i) < distance; i++) {
+			if (deletes.length(i) > 1) deletes.addDeletes(i);
 		}
+		return word.length() > prefixLength ? 0 : 1;
 	}
 
 	public List<String> findSimilarWords(String searchQuery) {
-		List<SuggestItem> suggestions = lookup(searchQuery, editDistanceMax);
+		return findSimilarWords(searchQuery, lookupContexts.get());
+	}
+
+	/**
+	 * Like {@link #findSimilarWords(String)}, but uses the working memory of
+	 * the given context instead of the one of the current thread.
+	 * 
+	 * @param searchQuery
+	 * @param context
+	 *        must not be used by other threads at the same time
+	 * @return the similar words
+	 */
+	public List<String> findSimilarWords(String searchQuery, LookupContext context) {
+		return findSimilarWords(searchQuery, null, context);
+	}
+
+	/**
+	 * Like {@link #findSimilarWords(String)}, but with other settings for
+	 * this lookup. Like with {@link #searcher(PreDictCustomizing)}, an
+	 * editDistanceMax below the one of the index can return other and more
+	 * words than an index built with that editDistanceMax.
+	 * 
+	 * @param searchQuery
+	 * @param options
+	 *        the settings to override
+	 * @return the similar words
+	 * @throws IllegalArgumentException
+	 *         if editDistanceMax exceeds the one the index was built with
+	 */
+	public List<String> findSimilarWords(String searchQuery, QueryOptions options) {
+		return findSimilarWords(searchQuery, options, lookupContexts.get());
+	}
+
+	/**
+	 * Like {@link #findSimilarWords(String, QueryOptions)}, but uses the
+	 * working memory of the given context.
+	 * 
+	 * @param searchQuery
+	 * @param options
+	 *        the settings to override, null keeps all of them
+	 * @param context
+	 *        must not be used by other threads at the same time
+	 * @return the similar words
+	 */
+	public List<String> findSimilarWords(String searchQuery, QueryOptions options, LookupContext context) {
+		int editDistanceMax = this.editDistanceMax;
+		int topK = this.topK;
+		if (options != null) {
+			if (options.getEditDistanceMax() > indexSettings.getEditDistanceMax()) {
+				throw new IllegalArgumentException("index was built with editDistanceMax="
+						+ indexSettings.getEditDistanceMax() + " but editDistanceMax="
+						+ options.getEditDistanceMax() + " is requested");
+			}
+			if (options.getEditDistanceMax() >= 0) editDistanceMax = options.getEditDistanceMax();
+			if (options.getTopK() >= 0) topK = options.getTopK();
+		}
+		String cleanedSearchWord = customizing.cleanSearchWord(searchQuery);
+		// read before the index, so a result that was found during a change
+		// is stored with the former version
+		long version = indexVersion;
+		if (queryCache != null) {
+			List<String> cachedWords = queryCache.get(cleanedSearchWord, editDistanceMax, topK, version);
+			if (cachedWords != null) return new ArrayList<>(cachedWords);
+		}
+		List<SuggestItem> suggestions = lookup(cleanedSearchWord, editDistanceMax, topK, context);
 		
-		List<String> similarWords = new ArrayList<>();
-		suggestions.forEach(suggestion -> similarWords.add(suggestion.term));
+		List<String> similarWords = new ArrayList<>(suggestions.size());
+		for (int i = 0; i < suggestions.size(); i++) {
+			similarWords.add(suggestions.get(i).term);
+		}
+		if (queryCache != null) queryCache.put(cleanedSearchWord, editDistanceMax, topK, version, similarWords);
 		
 		return similarWords;
 	}
 
-	private List<SuggestItem> lookup(String searchWord, int editDistanceMax) {
-		String cleanedSearchWord = customizing.cleanSearchWord(searchWord);
+	/**
+	 * @return the cache of the search results, null if queryCacheSize is 0
+	 */
+	public QueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	private List<SuggestItem> lookup(String cleanedSearchWord, int editDistanceMax, int topK, LookupContext context) {
+		// short search words are expanded less and allow lower distances
+		editDistanceMax = maxDistance(cleanedSearchWord.length(), editDistanceMax);
+		// the same state of the index is used for the whole lookup
+		DictionaryIndex index = dictionary.readView();
+		HighFanOutFragments highFanOut = highFanOutFragments;
+		if (highFanOut != null && !highFanOut.isOf(index)) highFanOut = null;
+		FragmentFilter filter = fragmentFilter;
+		if (filter != null && !filter.isOf(index)) filter = null;
 
 		// save some time
-		if (cleanedSearchWord.length() - editDistanceMax > maxlength)
+		if (cleanedSearchWord.length() - editDistanceMax > index.getMaxLength())
 			return new ArrayList<SuggestItem>();
 
-		List<String> candidates = new ArrayList<String>();
-		HashSet<String> candidatesUniq = new HashSet<String>();
+		context.reset();
+		context.setPattern(distanceFilters, cleanedSearchWord);
 
-		List<SuggestItem> suggestions = new ArrayList<SuggestItem>();
-		HashSet<String> checkedWords = new HashSet<String>();
+		// at the maximum level all suggestions within editDistanceMax are
+		// candidates for the result, only the topK best of them are kept
+		boolean bounded = accuracyLevel == AccuracyLevel.maximum;
+		SuggestionHeap topSuggestions = context.topSuggestions;
+		topSuggestions.reset(topK);
 
-		Object dictionaryEntry;
+		// the candidates are processed in the order they are added, so the
+		// deletes are checked level by level. Strings are only created for
+		// candidates that are found in the dictionary.
+		DeleteGenerator candidates = context.candidates;
+
+		List<SuggestItem> suggestions = context.suggestions;
+
+		DictionaryItem reusableItem = context.reusableItem;
 
 		// add original term
-		candidates.add(cleanedSearchWord);
+		candidates.add(cleanedSearchWord, 0, cleanedSearchWord.length());
+
+		// deletes are only created from the prefix of the search word, as it
+		// was done for the indexed words
+		int searchLength = cleanedSearchWord.length();
+		if (searchLength > prefixLength) {
+			searchLength = prefixLength;
+			candidates.add(cleanedSearchWord, 0, prefixLength);
+		}
 
-		while (candidates.size() > 0) {
-			String candidate = candidates.remove(0);
+		for (int candidateNr = 0; candidateNr < candidates.size(); candidateNr++) {
+			int candidateLength = candidates.length(candidateNr);
 
 			nosort: {
 
@@ -265,42 +944,73 @@ public class PreDict {
 				// distance of first suggestion
 				if ((accuracyLevel.ordinal() < 2)
 						&& (suggestions.size() > 0)
-						&& (cleanedSearchWord.length() - candidate.length() > suggestions.get(0).distance))
+						&& (searchLength - candidateLength > suggestions.get(0).distance))
 					break nosort;
 
-				// read candidate entry from dictionary
-				dictionaryEntry = dictionary.get(candidate);
-				if (dictionaryEntry != null) {
-					DictionaryItem matchedDictionaryItem = asDictionaryItem(dictionaryEntry);
+				// read candidate entry from dictionary, unless the filter
+				// knows it's absent. Its deletes are added anyway.
+				long hash = candidates.hash(candidateNr);
+				DictionaryItem matchedDictionaryItem = null;
+				if (filter == null) {
+					matchedDictionaryItem = index.read(candidates.get(candidateNr), hash, reusableItem);
+				} else if (filter.mightContain(hash)) {
+					matchedDictionaryItem = index.read(candidates.get(candidateNr), hash, reusableItem);
+					if (matchedDictionaryItem == null) context.countFalsePositiveProbe();
+				} else {
+					context.countFilteredProbe();
+				}
+				if (matchedDictionaryItem != null) {
+					// only created once it's passed to the customizing
+					String candidate = null;
 
 					// if count>0 then candidate entry is correct dictionary
 					// term, not only delete item
-					if ((matchedDictionaryItem.count > 0) && checkedWords.add(candidate)) {
+					if ((matchedDictionaryItem.count > 0) && context.checkWord(matchedDictionaryItem.wordNr)) {
+						candidate = candidates.toString(candidateNr);
 						// add correct dictionary term term to suggestion list
-						SuggestItem si = new SuggestItem();
+						SuggestItem si = context.newSuggestItem();
 						si.term = candidate;
 						si.count = matchedDictionaryItem.count;
-						si.wordFrequency = ((double) si.count / dictionary.size());
-						si.distance = getMaxDistance(cleanedSearchWord, candidate);
+						si.wordFrequency = ((double) si.count / index.size());
+						si.distance = getMaxDistance(cleanedSearchWord.length(), candidateLength);
 
 						si.distance = customizing.adjustDistance(cleanedSearchWord, candidate, si.distance);
 
 						if (si.distance <= editDistanceMax) {
-							suggestions.add(si);
+							if (bounded) {
+								topSuggestions.add(si);
+							} else {
+								suggestions.add(si);
+							}
 						}
 						// early termination
-						if ((accuracyLevel.ordinal() < 2) && (cleanedSearchWord.length() - candidate.length() == 0))
+						if ((accuracyLevel.ordinal() < 2) && (cleanedSearchWord.length() - candidateLength == 0))
 							break nosort;
 					}
 
 					// iterate through suggestions (to other correct dictionary
 					// items) of delete item and add them to suggestion list
-					for (int wordNr : matchedDictionaryItem.suggestions.toArray()) {
+					// of fragments with too many words, only the most
+					// frequent ones are checked
+					TIntList fragmentWords = matchedDictionaryItem.suggestions;
+					int wordCount = fragmentWords.size();
+					boolean truncated = maxFanOut > 0 && wordCount > maxFanOut;
+					int selected = -1;
+					if (truncated) {
+						context.countTruncated(wordCount - maxFanOut);
+						if (highFanOut != null) selected = highFanOut.find(hash);
+						if (selected < 0) context.fanOutSelection.select(fragmentWords, index, maxFanOut);
+						wordCount = maxFanOut;
+					}
+					for (int i = 0; i < wordCount; i++) {
+						int wordNr = !truncated ? fragmentWords.get(i)
+								: selected >= 0 ? highFanOut.getWord(selected + i)
+										: context.fanOutSelection.get(i);
 						// save some time by skipping double items early:
 						// different deletes of the input term can lead to
 						// the same suggestion
-						String suggestion = wordlist.get(wordNr);
-						if (checkedWords.add(suggestion)) {
+						if (context.checkWord(wordNr)) {
+							String suggestion = index.getWord(wordNr);
 							// Symmetric Delete Spelling Correction Magic:
 							// adjust distance, if both distances>0
 							// We allow simultaneous edits (deletes) of
@@ -322,10 +1032,10 @@ public class PreDict {
 							double distance = 0;
 							if (!suggestion.equals(cleanedSearchWord)) {
 								// Case 1: if only deletes match the dictionary
-								if (suggestion.length() == candidate.length()) {
-									distance = getMaxDistance(cleanedSearchWord, candidate);
-								} else if (cleanedSearchWord.length() == candidate.length()) {
-									distance = getMaxDistance(suggestion, candidate);
+								if (suggestion.length() == candidateLength) {
+									distance = getMaxDistance(cleanedSearchWord.length(), candidateLength);
+								} else if (cleanedSearchWord.length() == candidateLength) {
+									distance = getMaxDistance(suggestion.length(), candidateLength);
 
 									// Case 2: if further edits additional to
 									// the deletes need to happen in order to
@@ -335,30 +1045,49 @@ public class PreDict {
 									// because this speeds up the
 									// Damerau-levenshtein-Distance calculation
 									// without changing it.
-									int prefixLength = 0;
-									int suffixLength = 0;
+									int commonPrefixLength = 0;
+									int commonSuffixLength = 0;
 
-									while ((prefixLength < suggestion.length()) && (prefixLength < cleanedSearchWord.length())
+									while ((commonPrefixLength < suggestion.length()) && (commonPrefixLength < cleanedSearchWord.length())
 											&& (suggestion
 													.charAt(
-															prefixLength) == cleanedSearchWord.charAt(prefixLength)))
-										prefixLength++;
-
-									while ((suffixLength < suggestion.length() - prefixLength)
-											&& (suffixLength < cleanedSearchWord.length() - prefixLength)
-											&& (suggestion.charAt(suggestion.length() - suffixLength - 1) == cleanedSearchWord
-													.charAt(cleanedSearchWord.length() - suffixLength - 1)))
-										suffixLength++;
-
-									if ((prefixLength > 0) || (suffixLength > 0)) {
-										distance = cxpDamerauLevenshtein(
-												cleanedSearchWord.substring(prefixLength, cleanedSearchWord.length() - suffixLength),
-												suggestion.substring(prefixLength, suggestion.length() - suffixLength));
-										
+															commonPrefixLength) == cleanedSearchWord.charAt(commonPrefixLength)))
+										commonPrefixLength++;
+
+									while ((commonSuffixLength < suggestion.length() - commonPrefixLength)
+											&& (commonSuffixLength < cleanedSearchWord.length() - commonPrefixLength)
+											&& (suggestion.charAt(suggestion.length() - commonSuffixLength - 1) == cleanedSearchWord
+													.charAt(cleanedSearchWord.length() - commonSuffixLength - 1)))
+										commonSuffixLength++;
+
+									// distances that would be dropped anyway are
+									// not calculated
+									double maxDistance = editDistanceMax;
+									if (exactDistances) {
+										maxDistance = Double.POSITIVE_INFINITY;
+									} else if ((accuracyLevel.ordinal() < 2) && (suggestions.size() > 0)) {
+										maxDistance = Math.min(maxDistance, suggestions.get(0).distance);
+									} else if (bounded) {
+										// a higher distance can't make it into the top k
+										maxDistance = Math.min(maxDistance, topSuggestions.worstDistance());
+									}
+									int searchEnd = cleanedSearchWord.length() - commonSuffixLength;
+									int suggestionEnd = suggestion.length() - commonSuffixLength;
+									// the small tolerance covers the rounding of
+									// the summed weights
+									int maxEdits = distanceFilters.length > 0 ? (int) (maxDistance / minEditWeight + 1e-9) : 0;
+									if (context.exceeds(distanceFilters,
+											commonPrefixLength, searchEnd,
+											suggestion, commonPrefixLength, suggestionEnd,
+											maxEdits, replacementsCounted)) {
+										distance = Double.POSITIVE_INFINITY;
 									} else {
-										distance = cxpDamerauLevenshtein(cleanedSearchWord, suggestion);
+										distance = damerauLevenshtein.distance(
+												cleanedSearchWord, commonPrefixLength, searchEnd,
+												suggestion, commonPrefixLength, suggestionEnd,
+												maxDistance, context.distanceRows(searchEnd - commonPrefixLength));
 									}
-									distance = customizing.adjustDetailedDistance(cleanedSearchWord, suggestion, distance, prefixLength, suffixLength);
+									distance = customizing.adjustDetailedDistance(cleanedSearchWord, suggestion, distance, commonPrefixLength, commonSuffixLength);
 								}
 							}
 
@@ -379,16 +1108,21 @@ public class PreDict {
 								continue;
 							}
 
+							if (candidate == null) candidate = candidates.toString(candidateNr);
 							distance = customizing.adjustDistance(cleanedSearchWord, candidate, distance);
 
 							if (distance <= editDistanceMax) {
-								Object suggestedItem = dictionary.get(suggestion);
-								if (suggestedItem != null) {
-									SuggestItem si = new SuggestItem();
-									si.term = suggestion;
-									si.count = ((DictionaryItem) suggestedItem).count;
-									si.wordFrequency = ((double) si.count / dictionary.size());
-									si.distance = distance;
+								int count = index.getCount(wordNr);
+								if (bounded && !topSuggestions.accepts(distance, count)) continue;
+
+								SuggestItem si = context.newSuggestItem();
+								si.term = suggestion;
+								si.count = count;
+								si.wordFrequency = ((double) si.count / index.size());
+								si.distance = distance;
+								if (bounded) {
+									topSuggestions.add(si);
+								} else {
 									suggestions.add(si);
 								}
 							}
@@ -401,39 +1135,46 @@ public class PreDict {
 				// candidates list
 				// this is a recursive process until the maximum edit distance
 				// has been reached
-				if (cleanedSearchWord.length() - candidate.length() < editDistanceMax) {
+				if ((candidateLength <= searchLength) && (searchLength - candidateLength < editDistanceMax)) {
 					// save some time: do not create edits with edit distance
 					// smaller than suggestions already found
-					if ((accuracyLevel.ordinal() < 2) && (suggestions.size() > 0) && (cleanedSearchWord.length() - candidate
-							.length() >= suggestions.get(0).distance)) continue;
+					if ((accuracyLevel.ordinal() < 2) && (suggestions.size() > 0)
+							&& (searchLength - candidateLength >= suggestions.get(0).distance)) continue;
 
-					for (int i = 0; i < candidate.length(); i++) {
-						String delete = candidate.substring(0, i) + candidate.substring(i + 1);
-						if (candidatesUniq.add(delete)) candidates.add(delete);
-					}
+					candidates.addDeletes(candidateNr);
 				}
 			} // end lable nosort
-		} // end while
+		} // end for each candidate
 
-		return pickSuggestions(cleanedSearchWord, editDistanceMax, suggestions);
+		return pickSuggestions(cleanedSearchWord, topK, context);
 	}
 
-	private List<SuggestItem> pickSuggestions(String searchWord, int editDistanceMax, List<SuggestItem> suggestions) {
-		int k = suggestions.size();
-		if ((accuracyLevel == AccuracyLevel.topHit) && (suggestions.size() > 1))
-			k = 1;
-		else if (suggestions.size() > topK) {
-			k = topK;
+	private List<SuggestItem> pickSuggestions(String searchWord, int topK, LookupContext context) {
+		SuggestionHeap topSuggestions = context.topSuggestions;
+		List<SuggestItem> suggestions = context.suggestions;
+		// the other levels collect their suggestions in the list, that is
+		// only sorted if it's too long
+		if (accuracyLevel == AccuracyLevel.maximum) {
+			topSuggestions.drainTo(suggestions);
+		} else {
+			int k = accuracyLevel == AccuracyLevel.topHit ? 1 : topK;
+			if (suggestions.size() > k) {
+				topSuggestions.reset(k);
+				for (int i = 0; i < suggestions.size(); i++) {
+					topSuggestions.add(suggestions.get(i));
+				}
+				suggestions.clear();
+				topSuggestions.drainTo(suggestions);
+			}
 		}
 
-		List<SuggestItem> returnSuggestions;
-		if (k >= suggestions.size()) {
-			returnSuggestions = suggestions;
-		} else {
-			returnSuggestions = Ordering.from(distanceCountComparator).leastOf(suggestions, k);
+		if (wordFeatures != null) {
+			for (SuggestItem suggestion : suggestions) {
+				suggestion.features = wordFeatures.get(suggestion.term);
+			}
 		}
 		
-		return customizing.adjustFinalResult(searchWord, returnSuggestions);
+		return customizing.adjustFinalResult(searchWord, suggestions);
 	}
 
 	/**
@@ -443,63 +1184,14 @@ public class PreDict {
 	 * This is exact if the one string is part of the other string. This method
 	 * won't do this check however.
 	 * 
-	 * @param fromString
-	 * @param toString
+	 * @param fromLength
+	 * @param toLength
 	 * @return
 	 */
-	private double getMaxDistance(String fromString, String toString) {
-		boolean isDelete = fromString.length() > toString.length();
+	private double getMaxDistance(int fromLength, int toLength) {
+		boolean isDelete = fromLength > toLength;
 		return (isDelete ? deletionWeight : insertionWeight)
-				* (isDelete ? fromString.length() - toString.length() : toString.length() - fromString.length());
-	}
-
-	private double cxpDamerauLevenshtein(String a, String b) {
-		double[][] d = new double[b.length() + 1][a.length() + 1]; // 2d matrix
-
-		// Step 1
-		if (a.length() == 0) return b.length();
-		if (b.length() == 0) return a.length();
-
-		// Step 2
-		for (int i = a.length(); i >= 0; i--)
-			d[0][i] = i * deletionWeight;
-		for (int j = b.length(); j >= 0; j--)
-			d[j][0] = j;
-
-		// Step 4
-		for (int j = 1; j <= b.length(); j++) {
-			char b_j = b.charAt(j - 1);
-
-			// Step 3
-			for (int i = 1; i <= a.length(); i++) {
-				char a_i = a.charAt(i - 1);
-
-				// CXP Damerau operations
-				double min = min(
-						d[j - 1][i - 1],
-						d[j - 1][i],
-						d[j][i - 1]);
-				if (a_i == b_j) {
-					d[j][i] = min;
-				} else if (i == j) {
-					d[j][i] = min + (replaceWeight * customizing.getReplacementDistance(b_j, a_i)); // replace
-
-					if (i > 1 && a_i == b.charAt(j - 2) && a.charAt(i - 2) == b_j) {
-						d[j][i] = Math.min(d[j][i], d[j - 2][i - 2] + transpositionWeight); // transpose
-					}
-				} else if (i > j) {
-					d[j][i] = min + deletionWeight; // delete
-				} else if (i < j) {
-					d[j][i] = min + insertionWeight; // insert
-				}
-			}
-		}
-		// Step 5
-		return d[b.length()][a.length()];
-	}
-
-	private double min(double a, double b, double c) {
-		return Math.min(a, Math.min(b, c));
+				* (isDelete ? fromLength - toLength : toLength - fromLength);
 	}
 
 	@Override
@@ -0,0 +1,342 @@
+package de.cxp.predict;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.cxp.predict.common.FrequencySketch;
+
+/**
+ * Bounded cache of the similar words of cleaned search words, that is used by
+ * {@link PreDict} if queryCacheSize is set. Every result is stored with the
+ * version of the index it was computed from and is a miss once the index
+ * changed, so a cached result is never stale.
+ *
+ * Eviction follows W-TinyLFU: new entries enter a small LRU window (1% of the
+ * entries). Entries that fall out of the window only replace the least
+ * recently used entry of the main space, if they were requested more often
+ * according to a {@link FrequencySketch}. The main space is a segmented LRU,
+ * entries that are hit in its probation segment move to the protected segment
+ * (80%). So a burst of one-time misspellings can't displace the frequent ones.
+ *
+ * The keys are split into up to 16 segments with their own lock, sketch and
+ * queues.
+ */
+public final class QueryCache {
+
+	private static final int MAX_SEGMENTS = 16;
+	private static final int MIN_SEGMENT_SIZE = 32;
+
+	private final int maximumSize;
+	private final Segment[] segments;
+
+	/**
+	 * @param maximumSize
+	 *        positive maximum number of cached results
+	 */
+	QueryCache(int maximumSize) {
+		this.maximumSize = maximumSize;
+		int segmentCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_SEGMENTS, maximumSize / MIN_SEGMENT_SIZE)));
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			// the first segments take the remainder
+			segments[i] = new Segment(maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0));
+		}
+	}
+
+	/**
+	 * @param searchWord
+	 *        the cleaned search word
+	 * @param editDistanceMax
+	 * @param topK
+	 * @param version
+	 *        current version of the index
+	 * @return the cached words or null, if they are unknown or were computed
+	 *         from another version of the index
+	 */
+	List<String> get(String searchWord, int editDistanceMax, int topK, long version) {
+		Key key = new Key(searchWord, editDistanceMax, topK);
+		return segmentOf(key).get(key, version);
+	}
+
+	/**
+	 * @param searchWord
+	 *        the cleaned search word
+	 * @param editDistanceMax
+	 * @param topK
+	 * @param version
+	 *        version of the index, that was read before the words were found
+	 * @param words
+	 *        the similar words, which are copied
+	 */
+	void put(String searchWord, int editDistanceMax, int topK, long version, List<String> words) {
+		Key key = new Key(searchWord, editDistanceMax, topK);
+		segmentOf(key).put(key, version, Collections.unmodifiableList(new ArrayList<>(words)));
+	}
+
+	private Segment segmentOf(Key key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return segments[(h ^ (h >>> 16)) & (segments.length - 1)];
+	}
+
+	/**
+	 * @return maximum number of cached results
+	 */
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * @return number of cached results, including the ones of former versions
+	 *         of the index
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.nodes.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return number of lookups that were answered from the cache
+	 */
+	public long getHitCount() {
+		long hits = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				hits += segment.hits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * @return number of lookups that were not cached or only for another
+	 *         version of the index
+	 */
+	public long getMissCount() {
+		long misses = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				misses += segment.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * @return number of results that were dropped or not admitted, because
+	 *         the cache was full
+	 */
+	public long getEvictionCount() {
+		long evictions = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				evictions += segment.evictions;
+			}
+		}
+		return evictions;
+	}
+
+	@Override
+	public String toString() {
+		return "QueryCache [size=" + size() + ", maximumSize=" + maximumSize + ", hits=" + getHitCount()
+				+ ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + "]";
+	}
+
+	private static final class Key {
+
+		final String searchWord;
+		final int editDistanceMax;
+		final int topK;
+		final int hash;
+
+		Key(String searchWord, int editDistanceMax, int topK) {
+			this.searchWord = searchWord;
+			this.editDistanceMax = editDistanceMax;
+			this.topK = topK;
+			hash = (searchWord.hashCode() * 31 + editDistanceMax) * 31 + topK;
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) return false;
+			Key other = (Key) obj;
+			return hash == other.hash && editDistanceMax == other.editDistanceMax && topK == other.topK
+					&& searchWord.equals(other.searchWord);
+		}
+	}
+
+	private static final int WINDOW = 0;
+	private static final int PROBATION = 1;
+	private static final int PROTECTED = 2;
+
+	private static final class Node {
+
+		final Key key;
+		long version;
+		List<String> words;
+
+		int queue;
+		Node prev;
+		Node next;
+
+		Node(Key key, long version, List<String> words) {
+			this.key = key;
+			this.version = version;
+			this.words = words;
+		}
+	}
+
+	/**
+	 * Doubly linked list with the least recently used node at the head.
+	 */
+	private static final class Queue {
+
+		final int type;
+		Node head;
+		Node tail;
+		int size = 0;
+
+		Queue(int type) {
+			this.type = type;
+		}
+
+		void add(Node node) {
+			node.queue = type;
+			node.prev = tail;
+			node.next = null;
+			if (tail == null) {
+				head = node;
+			} else {
+				tail.next = node;
+			}
+			tail = node;
+			size++;
+		}
+
+		void remove(Node node) {
+			if (node.prev == null) {
+				head = node.next;
+			} else {
+				node.prev.next = node.next;
+			}
+			if (node.next == null) {
+				tail = node.prev;
+			} else {
+				node.next.prev = node.prev;
+			}
+			node.prev = null;
+			node.next = null;
+			size--;
+		}
+
+		void moveToTail(Node node) {
+			if (node == tail) return;
+			remove(node);
+			add(node);
+		}
+	}
+
+	private static final class Segment {
+
+		final int windowSize;
+		final int mainSize;
+		final int protectedSize;
+
+		final Map<Key, Node> nodes = new HashMap<>();
+		final FrequencySketch sketch;
+		final Queue window = new Queue(WINDOW);
+		final Queue probation = new Queue(PROBATION);
+		final Queue protectedQueue = new Queue(PROTECTED);
+
+		long hits = 0;
+		long misses = 0;
+		long evictions = 0;
+
+		Segment(int maximumSize) {
+			windowSize = Math.max(1, maximumSize / 100);
+			mainSize = maximumSize - windowSize;
+			protectedSize = mainSize * 8 / 10;
+			sketch = new FrequencySketch(maximumSize);
+		}
+
+		synchronized List<String> get(Key key, long version) {
+			sketch.increment(key.hashCode());
+			Node node = nodes.get(key);
+			if (node == null || node.version != version) {
+				misses++;
+				return null;
+			}
+			hits++;
+			switch (node.queue) {
+				case WINDOW:
+					window.moveToTail(node);
+					break;
+				case PROBATION:
+					// a second hit in the main space protects the node
+					probation.remove(node);
+					protectedQueue.add(node);
+					if (protectedQueue.size > protectedSize) probation.add(removeHead(protectedQueue));
+					break;
+				default:
+					protectedQueue.moveToTail(node);
+			}
+			return node.words;
+		}
+
+		synchronized void put(Key key, long version, List<String> words) {
+			Node node = nodes.get(key);
+			if (node != null) {
+				// a result of an older version is replaced, a newer one kept
+				if (node.version <= version) {
+					node.version = version;
+					node.words = words;
+				}
+				return;
+			}
+			node = new Node(key, version, words);
+			nodes.put(key, node);
+			window.add(node);
+			if (window.size > windowSize) {
+				probation.add(removeHead(window));
+				if (probation.size + protectedQueue.size > mainSize) evict();
+			}
+		}
+
+		// the candidate that left the window is the tail of probation, it
+		// competes with the least recently used node of the main space
+		private void evict() {
+			Node candidate = probation.tail;
+			Node victim = probation.head != candidate ? probation.head : protectedQueue.head;
+			if (victim != null && sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key
+					.hashCode())) {
+				remove(victim);
+			} else {
+				remove(candidate);
+			}
+			evictions++;
+		}
+
+		private void remove(Node node) {
+			(node.queue == PROBATION ? probation : protectedQueue).remove(node);
+			nodes.remove(node.key);
+		}
+
+		private static Node removeHead(Queue queue) {
+			Node node = queue.head;
+			queue.remove(node);
+			return node;
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package de.cxp.predict;
+
+import java.util.List;
+
+import de.cxp.predict.api.SuggestItem;
+
+/**
+ * Keeps the k best suggestions of a lookup, ordered by ascending distance,
+ * descending count and then by the order they were added. Once there are k of
+ * them, they form a heap with the worst of them on top, keyed by primitive
+ * arrays, so a new suggestion is compared to the k-th best in constant time.
+ */
+final class SuggestionHeap {
+
+	private int k = 0;
+	private int size = 0;
+	private boolean heap = false;
+	private int nextSeq = 0;
+
+	private SuggestItem[] items = new SuggestItem[8];
+	private double[] distances = new double[8];
+	private int[] counts = new int[8];
+	private int[] seqs = new int[8];
+
+	/**
+	 * Drops all suggestions.
+	 *
+	 * @param k
+	 *        maximum number of suggestions to keep
+	 */
+	void reset(int k) {
+		for (int i = 0; i < size; i++) {
+			items[i] = null;
+		}
+		if (items.length < k) {
+			items = new SuggestItem[k];
+			distances = new double[k];
+			counts = new int[k];
+			seqs = new int[k];
+		}
+		this.k = k;
+		size = 0;
+		heap = false;
+		nextSeq = 0;
+	}
+
+	/**
+	 * @return distance of the k-th best suggestion, infinite if there are less
+	 *         than k. Suggestions with a higher distance are not accepted.
+	 */
+	double worstDistance() {
+		if (size < k) return Double.POSITIVE_INFINITY;
+		if (k == 0) return Double.NEGATIVE_INFINITY;
+		ensureHeap();
+		return distances[0];
+	}
+
+	/**
+	 * @param distance
+	 * @param count
+	 * @return true if a suggestion with these values would be kept by
+	 *         {@link #add(SuggestItem)}
+	 */
+	boolean accepts(double distance, int count) {
+		if (size < k) return true;
+		ensureHeap();
+		// a new suggestion is added after all others, so it has to be better
+		return k > 0 && compare(distance, count, nextSeq, 0) < 0;
+	}
+
+	/**
+	 * Adds the suggestion, if it's one of the k best so far.
+	 *
+	 * @param item
+	 */
+	void add(SuggestItem item) {
+		int seq = nextSeq++;
+		if (size < k) {
+			set(size++, item, item.distance, item.count, seq);
+			return;
+		}
+		ensureHeap();
+		if (k == 0 || compare(item.distance, item.count, seq, 0) >= 0) return;
+		items[0] = null;
+		siftDown(0, item, item.distance, item.count, seq);
+	}
+
+	/**
+	 * Adds the kept suggestions to the list, ordered from best to worst. They
+	 * are removed from the heap.
+	 *
+	 * @param result
+	 */
+	void drainTo(List<SuggestItem> result) {
+		int n = size;
+		ensureHeap();
+		sortByRank();
+		for (int i = 0; i < n; i++) {
+			result.add(items[i]);
+			items[i] = null;
+		}
+		size = 0;
+	}
+
+	// heap sort: the worst one is moved behind the shrinking heap
+	private void sortByRank() {
+		int n = size;
+		while (size > 1) {
+			int last = --size;
+			SuggestItem item = items[last];
+			double distance = distances[last];
+			int count = counts[last];
+			int seq = seqs[last];
+			set(last, items[0], distances[0], counts[0], seqs[0]);
+			siftDown(0, item, distance, count, seq);
+		}
+		size = n;
+	}
+
+	private void ensureHeap() {
+		if (heap) return;
+		heap = true;
+		for (int i = size / 2 - 1; i >= 0; i--) {
+			siftDown(i, items[i], distances[i], counts[i], seqs[i]);
+		}
+	}
+
+	// compares the suggestion to the one at the given position
+	private int compare(double distance, int count, int seq, int pos) {
+		int compare = Double.compare(distance, distances[pos]);
+		if (compare == 0) compare = Integer.compare(counts[pos], count);
+		if (compare == 0) compare = Integer.compare(seq, seqs[pos]);
+		return compare;
+	}
+
+	// places the suggestion at the position or below, keeping the worst on top
+	private void siftDown(int pos, SuggestItem item, double distance, int count, int seq) {
+		int half = size >>> 1;
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			int right = child + 1;
+			if (right < size && compare(distances[right], counts[right], seqs[right], child) > 0) child = right;
+			if (compare(distance, count, seq, child) >= 0) break;
+			set(pos, items[child], distances[child], counts[child], seqs[child]);
+			pos = child;
+		}
+		set(pos, item, distance, count, seq);
+	}
+
+	private void set(int pos, SuggestItem item, double distance, int count, int seq) {
+		items[pos] = item;
+		distances[pos] = distance;
+		counts[pos] = count;
+		seqs[pos] = seq;
+	}
+}
@@ -12,4 +12,14 @@ public interface CharDistance {
 	 */
 	double distance(char a, char b);
 
+	/**
+	 * Lower bound of the distance of two different chars. Returns 0 by
+	 * default, which is always correct.
+	 * 
+	 * @return minimum distance value
+	 */
+	default double minDistance() {
+		return 0;
+	}
+
 }
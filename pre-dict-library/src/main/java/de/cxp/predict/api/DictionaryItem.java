@@ -14,4 +14,6 @@ public class DictionaryItem {
 	
 	public TIntList suggestions = new TIntArrayList();
 	public int count = 0;
+	// number of the word that is equal to the term, -1 if it's only a fragment
+	public int wordNr = -1;
 }
\ No newline at end of file
@@ -1,6 +1,13 @@
 package de.cxp.predict.api;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import de.cxp.predict.PreDict.AccuracyLevel;
+import de.cxp.predict.PreDict.DistanceFilterType;
+import de.cxp.predict.PreDict.IndexType;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.ToString;
@@ -12,6 +19,12 @@ public class PreDictSettings {
 
 	private int editDistanceMax = 2;
 
+	// the n-th value is the minimum length of words and search words, that
+	// allows a distance of n, up to editDistanceMax. E.g. 4, 7 allows no edit
+	// up to 3 chars, 1 up to 6 chars and 2 above. Empty allows editDistanceMax
+	// for all lengths.
+	private List<Integer> minLengthsPerDistance = Collections.emptyList();
+
 	private AccuracyLevel accuracyLevel = AccuracyLevel.maximum;
 
 	private int topK = 6; // limits result to n entries
@@ -25,11 +38,46 @@ public class PreDictSettings {
 
 	private double transpositionWeight = 0.8; // 1.05
 
+	private IndexType indexType = IndexType.map;
+
+	// fragments are only generated from the first n chars of a word
+	private int prefixLength = Integer.MAX_VALUE;
+
+	// words are only suggested, once they occurred that often
+	private int minCountForSuggestion = 1;
+
+	// at most n words of a fragment are checked, the most frequent ones. 0
+	// checks all of them.
+	private int maxFanOut = 0;
+
+	// keys of a frozen index are added to a Bloom filter with n bits per key,
+	// that rejects most terms a lookup probes but that are not indexed. 0
+	// disables the filter.
+	private int fragmentFilterBitsPerKey = 0;
+
+	// the results of the n most valuable search words are cached. 0 disables
+	// the cache.
+	private int queryCacheSize = 0;
+
+	// lower bounds that are checked before a distance is calculated, the
+	// cheapest first
+	private List<DistanceFilterType> distanceFilters = Arrays.asList(DistanceFilterType.letterSignature,
+			DistanceFilterType.editCount);
+
 	public PreDictSettings editDistanceMax(int editDistanceMax) {
 		setEditDistanceMax(editDistanceMax);
 		return this;
 	}
 
+	public PreDictSettings minLengthsPerDistance(int... minLengths) {
+		List<Integer> lengths = new ArrayList<>(minLengths.length);
+		for (int minLength : minLengths) {
+			lengths.add(minLength);
+		}
+		setMinLengthsPerDistance(lengths);
+		return this;
+	}
+
 	public PreDictSettings accuracyLevel(AccuracyLevel tophit) {
 		setAccuracyLevel(tophit);
 		return this;
@@ -59,5 +107,40 @@ public class PreDictSettings {
 		setTranspositionWeight(weight);
 		return this;
 	}
+
+	public PreDictSettings indexType(IndexType indexType) {
+		setIndexType(indexType);
+		return this;
+	}
+
+	public PreDictSettings prefixLength(int prefixLength) {
+		setPrefixLength(prefixLength);
+		return this;
+	}
+
+	public PreDictSettings minCountForSuggestion(int minCount) {
+		setMinCountForSuggestion(minCount);
+		return this;
+	}
+
+	public PreDictSettings maxFanOut(int maxFanOut) {
+		setMaxFanOut(maxFanOut);
+		return this;
+	}
+
+	public PreDictSettings fragmentFilterBitsPerKey(int bitsPerKey) {
+		setFragmentFilterBitsPerKey(bitsPerKey);
+		return this;
+	}
+
+	public PreDictSettings queryCacheSize(int queryCacheSize) {
+		setQueryCacheSize(queryCacheSize);
+		return this;
+	}
+
+	public PreDictSettings distanceFilters(DistanceFilterType... filters) {
+		setDistanceFilters(Arrays.asList(filters));
+		return this;
+	}
 	
 }
@@ -0,0 +1,32 @@
+package de.cxp.predict.api;
+
+import de.cxp.predict.PreDict;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings of a single lookup, that override the ones of the {@link PreDict}
+ * instance, see {@link PreDict#findSimilarWords(String, QueryOptions)}. A
+ * value of -1 keeps the setting of the instance. The customizing still ranks
+ * the suggestions with its own settings.
+ */
+@Data
+@NoArgsConstructor
+public class QueryOptions {
+
+	// at most the editDistanceMax the index was built with. A lower one can
+	// still find words, that an index built with it would miss.
+	private int editDistanceMax = -1;
+
+	private int topK = -1;
+
+	public QueryOptions editDistanceMax(int editDistanceMax) {
+		setEditDistanceMax(editDistanceMax);
+		return this;
+	}
+
+	public QueryOptions topK(int topK) {
+		setTopK(topK);
+		return this;
+	}
+}
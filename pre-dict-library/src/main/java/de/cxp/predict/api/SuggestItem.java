@@ -15,6 +15,9 @@ public class SuggestItem {
 	public double prefixProximity; 
 	public double proximity; // => final similarity
 
+	// only set for the final result, if the customizing uses them
+	public WordFeatures features;
+
 	@Override
 	public boolean equals(Object obj) {
 		return term.equals(((SuggestItem) obj).term);
@@ -0,0 +1,49 @@
+package de.cxp.predict.api;
+
+import lombok.Data;
+
+/**
+ * A term together with the number of its occurrences, e.g. a line of a
+ * frequency file.
+ */
+@Data
+public class TermCount {
+
+	private final String term;
+
+	private final int count;
+
+	/**
+	 * Parses a line of a frequency file, where the term and its count are
+	 * separated by the last whitespace of the line. Since the line is not
+	 * kept, huge files can be indexed as a stream:
+	 *
+	 * <pre>
+	 * try (BufferedReader reader = Files.newBufferedReader(path)) {
+	 * 	preDict.indexAll(reader.lines().map(TermCount::parse).iterator());
+	 * }
+	 * </pre>
+	 *
+	 * @param line
+	 * @return the term count
+	 * @throws IllegalArgumentException
+	 *         if the line doesn't end with a count
+	 */
+	public static TermCount parse(String line) {
+		int end = line.length();
+		while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+			end--;
+		}
+		int separator = end - 1;
+		while (separator >= 0 && !Character.isWhitespace(line.charAt(separator))) {
+			separator--;
+		}
+		if (separator < 0) throw new IllegalArgumentException("no count found in line: " + line);
+		try {
+			long count = Long.parseLong(line.substring(separator + 1, end));
+			return new TermCount(line.substring(0, separator).trim(), (int) Math.min(count, Integer.MAX_VALUE));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("no count found in line: " + line, e);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package de.cxp.predict.api;
+
+import de.cxp.predict.common.Eudex;
+import de.cxp.predict.common.FragmentProximity;
+
+/**
+ * Data of a word that the proximity functions of the final ranking need. It's
+ * computed once for every dictionary word, so the ranking of a lookup only has
+ * to compute it for the search word.
+ */
+public final class WordFeatures {
+
+	public final long eudex;
+
+	// see FragmentProximity.sortedBigrams
+	public final int[] bigrams;
+
+	private WordFeatures(long eudex, int[] bigrams) {
+		this.eudex = eudex;
+		this.bigrams = bigrams;
+	}
+
+	public static WordFeatures of(String word) {
+		return new WordFeatures(Eudex.encode(word), FragmentProximity.sortedBigrams(word));
+	}
+}
@@ -0,0 +1,40 @@
+package de.cxp.predict.common;
+
+/**
+ * Lower bound of the number of edits between the search word and a candidate,
+ * used to reject candidates without calculating their weighted distance. A
+ * filter must never reject a candidate that needs at most the given number of
+ * edits.
+ *
+ * Not thread safe, the pattern is set once per lookup.
+ */
+public interface DistanceFilter {
+
+	/**
+	 * @param pattern
+	 *        the string that is compared by
+	 *        {@link #exceeds(int, int, CharSequence, int, int, int, boolean)}
+	 */
+	void setPattern(String pattern);
+
+	/**
+	 * Checks if the range of the pattern and the range of b are more than the
+	 * given number of edits apart.
+	 *
+	 * @param aStart
+	 *        start of the range of the pattern
+	 * @param aEnd
+	 *        end of the range of the pattern
+	 * @param b
+	 * @param bStart
+	 * @param bEnd
+	 * @param maxEdits
+	 * @param countReplacements
+	 *        false if replacements may have no weight, they are not counted as
+	 *        an edit then
+	 * @return true if more edits are needed, false if not or if it can't be
+	 *         decided by this filter
+	 */
+	boolean exceeds(int aStart, int aEnd, CharSequence b, int bStart, int bEnd, int maxEdits,
+			boolean countReplacements);
+}
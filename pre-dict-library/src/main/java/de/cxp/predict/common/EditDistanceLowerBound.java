@@ -0,0 +1,154 @@
+package de.cxp.predict.common;
+
+import java.util.Arrays;
+
+/**
+ * Bit-parallel lower bound of {@link WeightedDamerauLevenshtein}, used to skip
+ * the weighted calculation for candidates that are too far away anyway.
+ *
+ * It evaluates the same recurrence with a cost of one for every edit, so the
+ * weighted distance is at least the number of edits times the smallest
+ * weight. The plain unweighted Damerau-Levenshtein distance can't be used for
+ * that, because the weighted recurrence moves over equal chars for free
+ * ("a" to "aaaa" has a distance of 0). Instead of distances, the cells that
+ * can be reached with at most k edits are kept as one bit vector per row and
+ * k, with one bit per char of the pattern. That limits the pattern to 64
+ * chars, longer patterns are never rejected.
+ *
+ * Not thread safe, the pattern is set once per lookup.
+ */
+public class EditDistanceLowerBound implements DistanceFilter {
+
+	public static final int MAX_PATTERN_LENGTH = 64;
+
+	// bit i is set for every char at position i of the pattern. Latin-1 chars
+	// are looked up directly, the others in a short list.
+	private final long[] latin1Masks = new long[256];
+	private char[] otherChars = new char[8];
+	private long[] otherMasks = new long[8];
+	private int otherCount = 0;
+
+	private String pattern = "";
+	private boolean supported = true;
+
+	// rows j-2, j-1 and j for every number of edits
+	private long[] rows = new long[12];
+
+	@Override
+	public void setPattern(String pattern) {
+		for (int i = 0; i < this.pattern.length(); i++) {
+			char c = this.pattern.charAt(i);
+			if (c < latin1Masks.length) latin1Masks[c] = 0;
+		}
+		otherCount = 0;
+
+		this.pattern = pattern;
+		supported = pattern.length() <= MAX_PATTERN_LENGTH;
+		if (!supported) return;
+
+		for (int i = 0; i < pattern.length(); i++) {
+			char c = pattern.charAt(i);
+			long bit = 1L << i;
+			if (c < latin1Masks.length) {
+				latin1Masks[c] |= bit;
+				continue;
+			}
+			int other = 0;
+			while (other < otherCount && otherChars[other] != c) {
+				other++;
+			}
+			if (other == otherCount) {
+				if (otherCount == otherChars.length) {
+					otherChars = Arrays.copyOf(otherChars, otherCount * 2);
+					otherMasks = Arrays.copyOf(otherMasks, otherCount * 2);
+				}
+				otherChars[other] = c;
+				otherMasks[other] = 0;
+				otherCount++;
+			}
+			otherMasks[other] |= bit;
+		}
+	}
+
+	private long mask(char c) {
+		if (c < latin1Masks.length) return latin1Masks[c];
+		for (int i = 0; i < otherCount; i++) {
+			if (otherChars[i] == c) return otherMasks[i];
+		}
+		return 0;
+	}
+
+	/**
+	 * Returns false if the pattern is too long.
+	 */
+	@Override
+	public boolean exceeds(int aStart, int aEnd, CharSequence b, int bStart, int bEnd, int maxEdits,
+			boolean countReplacements) {
+		if (!supported) return false;
+		int n = aEnd - aStart;
+		int m = bEnd - bStart;
+		// the weighted distance is the unweighted length in that case
+		if (n == 0) return m > maxEdits;
+		if (m == 0) return n > maxEdits;
+
+		long full = n == 64 ? -1L : (1L << n) - 1;
+		int levels = maxEdits + 1;
+		if (rows.length < 3 * levels) rows = new long[3 * levels];
+		int row2 = 0;
+		int row1 = levels;
+		int row = 2 * levels;
+
+		// first row: deletions only
+		for (int k = 0; k < levels; k++) {
+			rows[row2 + k] = 0;
+			rows[row1 + k] = k >= n ? full : (1L << k) - 1;
+		}
+
+		for (int j = 1; j <= m; j++) {
+			char b_j = b.charAt(bStart + j - 1);
+			long match = (mask(b_j) >>> aStart) & full;
+			// the only cell that is a replacement or transposition
+			long diagonal = j <= n ? 1L << (j - 1) : 0;
+			if (!countReplacements) match |= diagonal;
+			boolean transposable = j > 1 && j <= n && (match & diagonal) == 0
+					&& pattern.charAt(aStart + j - 1) == b.charAt(bStart + j - 2)
+					&& pattern.charAt(aStart + j - 2) == b_j;
+
+			// cells with a neighbour in the previous row or the first column,
+			// reached with one edit less
+			long lowerNeighbours = 0;
+			long lower = 0;
+			for (int k = 0; k < levels; k++) {
+				long up = rows[row1 + k];
+				// the first column is j edits away
+				long first = j <= k ? 1 : 0;
+				long neighbours = up | (up << 1) | (j - 1 <= k ? 1 : 0) | first;
+				long reached = match & neighbours;
+				if (k > 0) {
+					reached |= lower | ((lowerNeighbours | (lower << 1)) & full);
+					if (transposable && (j == 2 || (rows[row2 + k - 1] & (1L << (j - 3))) != 0)) {
+						reached |= diagonal;
+					}
+				}
+				// moves to the right over matching chars are free: the carry
+				// of the addition runs from the reached cells to the end of
+				// each run of matches
+				long starts = (reached << 1) & match;
+				reached |= (((match + starts) ^ match) | starts) & match;
+				reached &= full;
+				rows[row + k] = reached;
+				lower = reached;
+				lowerNeighbours = neighbours;
+			}
+
+			// nothing is reachable from the last two rows anymore
+			if (lower == 0 && rows[row1 + maxEdits] == 0 && j - 1 > maxEdits) return true;
+
+			int free = row2;
+			row2 = row1;
+			row1 = row;
+			row = free;
+		}
+		return (rows[row1 + maxEdits] & (1L << (n - 1))) == 0;
+	}
+}
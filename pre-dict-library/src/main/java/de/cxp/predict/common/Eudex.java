@@ -145,8 +145,8 @@ public class Eudex {
     };
 
     public static long encode(String str) {
-        char[] ch = str.toCharArray();
-        int entry = ch.length > 0 ? ((ch[0] | 32) - 'a') & 0xFF: 0;
+        int length = str.length();
+        int entry = length > 0 ? ((str.charAt(0) | 32) - 'a') & 0xFF: 0;
         long first_byte = 0L;
         if (entry < LETTERS) {
             first_byte = INJECTIVE_PHONES[entry];
@@ -156,10 +156,10 @@ public class Eudex {
         long res = 0L;
         int n = 1;
         int b = 1;
-        while (n != 0 && b < ch.length) {
-            entry = ((ch[b] | 32) - 'a') & 0xFF;
+        while (n != 0 && b < length) {
+            entry = ((str.charAt(b) | 32) - 'a') & 0xFF;
             if (entry <= 'z') {
-                Long x;
+                long x;
                 if (entry < LETTERS) {
                     x = PHONES[entry];
                 } else if (entry >= 0xDF && entry < 0xFF) {
@@ -7,6 +7,11 @@ import java.util.Arrays;
  * advantage of the fact that a bigram of 2 chars can be stored in 1 int, and
  * applies a matching algorithm of O(n*log(n)) instead of O(n*n).
  * 
+ * Words with up to 64 bigrams are matched without sorting: every bigram of
+ * the one word takes the first unused equal bigram of the other word, which
+ * are marked in a bit mask. That counts the same matches and doesn't allocate
+ * anything.
+ * 
  * 
  * @param s The first string
  * @param t The second String
@@ -17,6 +22,8 @@ import java.util.Arrays;
  */
 public class FragmentProximity {
 
+	public static final int MAX_BITMASK_BIGRAMS = 64;
+
 	public static double distance(String s, String t)
 	{
 		// Verifying the input:
@@ -29,17 +36,97 @@ public class FragmentProximity {
 	        if (s.length() < 2 || t.length() < 2)
 	            return 0;
 	
-		// Create the bigrams for string s:
-		final int n = s.length()-1;
-		final int[] sPairs = getBigrams(s, n);
-	
-		// Create the bigrams for string t:
-		final int m = t.length()-1;
-		final int[] tPairs = getBigrams(t, m);
-	
-		// Sort the bigram lists:
-		Arrays.sort(sPairs);
-		Arrays.sort(tPairs);
+		final int n = s.length() - 1;
+		final int m = t.length() - 1;
+		if (m > MAX_BITMASK_BIGRAMS)
+			return distance(sortedBigrams(s), sortedBigrams(t));
+
+		// Count the matches:
+		int matches = 0;
+		long used = 0;
+		for (int i = 0; i < n; i++)
+		{
+			final int pair = bigram(s, i);
+			for (int j = 0; j < m; j++)
+			{
+				if ((used & (1L << j)) == 0 && bigram(t, j) == pair)
+				{
+					used |= 1L << j;
+					matches += 2;
+					break;
+				}
+			}
+		}
+		return (double)matches/(n+m);
+	}
+
+	/**
+	 * The dice coefficient of the first n {@link #sortedBigrams(String)} of a
+	 * word and of the string t. Unlike {@link #distance(String, String)}, it
+	 * returns 0 for equal strings with less than 2 characters, just like
+	 * {@link #distance(int[], int[])}.
+	 * 
+	 * @param sPairs
+	 * @param n
+	 * @param t
+	 * @return The dice coefficient
+	 */
+	public static double distance(int[] sPairs, final int n, String t)
+	{
+		final int m = t.length() - 1;
+		if (n == 0 || m <= 0)
+			return 0;
+		if (n > MAX_BITMASK_BIGRAMS)
+			return distance(sPairs, n, sortedBigrams(t), m);
+
+		int matches = 0;
+		long used = 0;
+		for (int j = 0; j < m; j++)
+		{
+			final int pair = bigram(t, j);
+			for (int i = 0; i < n; i++)
+			{
+				if ((used & (1L << i)) == 0 && sPairs[i] == pair)
+				{
+					used |= 1L << i;
+					matches += 2;
+					break;
+				}
+			}
+		}
+		return (double)matches/(n+m);
+	}
+
+	private static int bigram(String s, int i) {
+		return s.charAt(i) << 16 | s.charAt(i + 1);
+	}
+
+	/**
+	 * The dice coefficient of two strings, given by their
+	 * {@link #sortedBigrams(String)}. Returns 0 if one of them has no bigrams.
+	 * 
+	 * @param sPairs
+	 * @param tPairs
+	 * @return The dice coefficient
+	 */
+	public static double distance(int[] sPairs, int[] tPairs)
+	{
+		return distance(sPairs, sPairs.length, tPairs, tPairs.length);
+	}
+
+	/**
+	 * The dice coefficient of the first n and m sorted bigrams of two strings.
+	 * 
+	 * @param sPairs
+	 * @param n
+	 * @param tPairs
+	 * @param m
+	 * @return The dice coefficient
+	 */
+	public static double distance(int[] sPairs, final int n, int[] tPairs, final int m)
+	{
+		if (n == 0 || m == 0)
+			return 0;
 	
 		// Count the matches:
 		int matches = 0, i = 0, j = 0;
@@ -59,6 +146,37 @@ public class FragmentProximity {
 		return (double)matches/(n+m);
 	}
 
+	/**
+	 * @param s
+	 * @return the sorted bigrams of the string, empty if it has less than 2
+	 *         characters
+	 */
+	public static int[] sortedBigrams(String s) {
+		if (s.length() < 2)
+			return new int[0];
+		final int[] pairs = getBigrams(s, s.length() - 1);
+		Arrays.sort(pairs);
+		return pairs;
+	}
+
+	/**
+	 * Writes the sorted bigrams of the string to the given buffer.
+	 * 
+	 * @param s
+	 * @param pairs
+	 *        buffer with at least s.length() - 1 elements
+	 * @return number of bigrams
+	 */
+	public static int sortedBigrams(String s, int[] pairs) {
+		final int n = s.length() - 1;
+		if (n < 1)
+			return 0;
+		for (int i = 0; i < n; i++)
+			pairs[i] = bigram(s, i);
+		Arrays.sort(pairs, 0, n);
+		return n;
+	}
+
 	private static int[] getBigrams(String s, final int n) {
 		final int[] sPairs = new int[n];
 		for (int i = 0; i <= n; i++)
@@ -0,0 +1,96 @@
+package de.cxp.predict.common;
+
+/**
+ * Estimates how often a key was seen recently, with a count-min sketch of 4
+ * bit counters. Every key is counted in 4 counters, its frequency is the lowest
+ * of them, so collisions only overestimate it. Once the number of increments
+ * reaches ten times the given size, all counters are halved, so old
+ * popularity fades out. It decides which entries the query cache of PreDict
+ * admits (TinyLFU).
+ *
+ * The table holds one long with 16 counters per expected key. It is not thread
+ * safe.
+ */
+public class FrequencySketch {
+
+	private static final long[] SEEDS = { 0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL,
+			0xCBF29CE484222325L };
+
+	private static final long RESET_MASK = 0x7777777777777777L;
+
+	private static final int MAX_COUNT = 15;
+
+	private final long[] table;
+	private final int tableMask;
+	private final int sampleSize;
+	private int additions = 0;
+
+	/**
+	 * @param maximumSize
+	 *        number of keys that are expected to be tracked
+	 */
+	public FrequencySketch(int maximumSize) {
+		int length = Integer.highestOneBit(Math.max(maximumSize, 8) - 1) << 1;
+		table = new long[length];
+		tableMask = length - 1;
+		sampleSize = 10 * Math.max(maximumSize, 8);
+	}
+
+	/**
+	 * @param hashCode
+	 *        hash code of the key
+	 * @return estimated number of increments of that key, at most 15
+	 */
+	public int frequency(int hashCode) {
+		int hash = spread(hashCode);
+		int start = (hash & 3) << 2;
+		int frequency = MAX_COUNT;
+		for (int i = 0; i < 4; i++) {
+			int offset = (start + i) << 2;
+			int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xF);
+			frequency = Math.min(frequency, count);
+		}
+		return frequency;
+	}
+
+	/**
+	 * Counts an occurrence of the key.
+	 *
+	 * @param hashCode
+	 *        hash code of the key
+	 */
+	public void increment(int hashCode) {
+		int hash = spread(hashCode);
+		int start = (hash & 3) << 2;
+		boolean added = false;
+		for (int i = 0; i < 4; i++) {
+			int index = indexOf(hash, i);
+			int offset = (start + i) << 2;
+			if (((table[index] >>> offset) & 0xF) < MAX_COUNT) {
+				table[index] += 1L << offset;
+				added = true;
+			}
+		}
+		if (added && ++additions == sampleSize) reset();
+	}
+
+	// halves all counters
+	private void reset() {
+		for (int i = 0; i < table.length; i++) {
+			table[i] = (table[i] >>> 1) & RESET_MASK;
+		}
+		additions >>>= 1;
+	}
+
+	private int indexOf(int hash, int i) {
+		long h = (hash + SEEDS[i]) * SEEDS[i];
+		h += h >>> 32;
+		return (int) h & tableMask;
+	}
+
+	private static int spread(int x) {
+		x = ((x >>> 16) ^ x) * 0x45D9F3B;
+		x = ((x >>> 16) ^ x) * 0x45D9F3B;
+		return (x >>> 16) ^ x;
+	}
+}
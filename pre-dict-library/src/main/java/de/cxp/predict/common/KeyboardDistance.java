@@ -0,0 +1,118 @@
+package de.cxp.predict.common;
+
+import java.util.Map;
+
+import de.cxp.predict.api.CharDistance;
+import gnu.trove.map.hash.TCharIntHashMap;
+
+/**
+ * {@link CharDistance} backed by a dense table with the distances of all pairs
+ * of keys. Latin-1 chars are mapped to their key by an array, other chars by a
+ * small primitive map, so a lookup doesn't allocate anything. Chars that are
+ * not on the keyboard have the distance 1 to all other chars.
+ */
+public class KeyboardDistance implements CharDistance {
+
+	// distance of keys that are at most one or two key widths apart, all
+	// other keys have the distance 1
+	public static final double NEIGHBOUR_DISTANCE = 0.6;
+	public static final double SECOND_NEIGHBOUR_DISTANCE = 0.9;
+
+	// key number + 1 of the chars, 0 if the char is not on the keyboard
+	private final int[] latin1Keys = new int[256];
+	private final TCharIntHashMap otherKeys = new TCharIntHashMap();
+
+	private int keyCount = 0;
+
+	// distances of the keys, key by key
+	private final double[] distances;
+
+	private final double minDistance;
+
+	/**
+	 * Derives the distances from the key positions of the layout: keys that
+	 * are up to 1.25 key widths apart are neighbours, keys up to 2.25 key
+	 * widths apart are second neighbours.
+	 *
+	 * @param layout
+	 */
+	public KeyboardDistance(KeyboardLayout layout) {
+		int size = layout.size();
+		for (int i = 0; i < size; i++) {
+			addKey(layout.getKey(i));
+		}
+		distances = new double[size * size];
+		double min = 1;
+		for (int i = 0; i < size; i++) {
+			for (int j = 0; j < size; j++) {
+				if (i == j) continue;
+				double keyDistance = layout.distance(i, j);
+				double distance = keyDistance <= 1.25 ? NEIGHBOUR_DISTANCE
+						: keyDistance <= 2.25 ? SECOND_NEIGHBOUR_DISTANCE : 1;
+				distances[i * size + j] = distance;
+				min = Math.min(min, distance);
+			}
+		}
+		minDistance = min;
+	}
+
+	/**
+	 * Uses the given distances of pairs of chars, that are given as strings of
+	 * two chars. The distances are symmetric, all other pairs of different
+	 * chars have the distance 1.
+	 *
+	 * @param pairDistances
+	 */
+	public KeyboardDistance(Map<String, Double> pairDistances) {
+		for (String pair : pairDistances.keySet()) {
+			if (pair.length() != 2) throw new IllegalArgumentException("not a pair of chars: '" + pair + "'");
+			if (key(pair.charAt(0)) < 0) addKey(pair.charAt(0));
+			if (key(pair.charAt(1)) < 0) addKey(pair.charAt(1));
+		}
+		distances = new double[keyCount * keyCount];
+		for (int i = 0; i < keyCount; i++) {
+			for (int j = 0; j < keyCount; j++) {
+				if (i != j) distances[i * keyCount + j] = 1;
+			}
+		}
+		double min = 1;
+		for (Map.Entry<String, Double> pairDistance : pairDistances.entrySet()) {
+			int a = key(pairDistance.getKey().charAt(0));
+			int b = key(pairDistance.getKey().charAt(1));
+			if (a == b) continue;
+			double distance = pairDistance.getValue();
+			distances[a * keyCount + b] = distance;
+			distances[b * keyCount + a] = distance;
+			min = Math.min(min, distance);
+		}
+		minDistance = min;
+	}
+
+	private void addKey(char c) {
+		int keyNr = ++keyCount;
+		if (c < latin1Keys.length) {
+			latin1Keys[c] = keyNr;
+		} else {
+			otherKeys.put(c, keyNr);
+		}
+	}
+
+	// returns -1 for chars that are not on the keyboard
+	private int key(char c) {
+		return (c < latin1Keys.length ? latin1Keys[c] : otherKeys.get(c)) - 1;
+	}
+
+	@Override
+	public double distance(char a, char b) {
+		if (a == b) return 0;
+		int keyA = key(a);
+		int keyB = key(b);
+		if (keyA < 0 || keyB < 0) return 1;
+		return distances[keyA * keyCount + keyB];
+	}
+
+	@Override
+	public double minDistance() {
+		return minDistance;
+	}
+}
@@ -0,0 +1,163 @@
+package de.cxp.predict.common;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import lombok.Getter;
+
+/**
+ * Positions of the keys of a keyboard, used by {@link KeyboardDistance}.
+ *
+ * A layout is defined by one line per row of keys. Each line starts with the
+ * horizontal offset of the row, followed by the chars of its keys without
+ * spaces. Keys are one unit wide and rows one unit apart. Empty lines and
+ * lines starting with '#' are ignored, for example:
+ *
+ * <pre>
+ * # US QWERTY
+ * 0    1234567890-=
+ * 0.5  qwertyuiop[]
+ * 0.75 asdfghjkl;'
+ * 1.25 zxcvbnm,./
+ * </pre>
+ *
+ * The bundled layouts are loaded with {@link #qwertz()}, {@link #qwerty()},
+ * {@link #azerty()} and {@link #mobile()}.
+ */
+public class KeyboardLayout {
+
+	@Getter
+	private final String name;
+
+	private final char[] keys;
+	private final double[] x;
+	private final double[] y;
+
+	private KeyboardLayout(String name, char[] keys, double[] x, double[] y) {
+		this.name = name;
+		this.keys = keys;
+		this.x = x;
+		this.y = y;
+	}
+
+	/**
+	 * @return German QWERTZ layout
+	 */
+	public static KeyboardLayout qwertz() {
+		return load("qwertz");
+	}
+
+	/**
+	 * @return US QWERTY layout
+	 */
+	public static KeyboardLayout qwerty() {
+		return load("qwerty");
+	}
+
+	/**
+	 * @return French AZERTY layout
+	 */
+	public static KeyboardLayout azerty() {
+		return load("azerty");
+	}
+
+	/**
+	 * @return QWERTY layout of touch screens, without the row of digits
+	 */
+	public static KeyboardLayout mobile() {
+		return load("mobile");
+	}
+
+	private static KeyboardLayout load(String name) {
+		try (InputStream in = KeyboardLayout.class.getResourceAsStream("/de/cxp/predict/layouts/" + name + ".layout")) {
+			if (in == null) throw new IllegalArgumentException("unknown keyboard layout " + name);
+			return read(name, new InputStreamReader(in, StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			throw new UncheckedIOException("can't load keyboard layout " + name, e);
+		}
+	}
+
+	/**
+	 * Reads a layout definition as described above.
+	 *
+	 * @param name
+	 * @param reader
+	 * @return the layout
+	 * @throws IOException
+	 *         if the definition can't be read
+	 * @throws IllegalArgumentException
+	 *         if a line has an invalid offset or a key occurs twice
+	 */
+	public static KeyboardLayout read(String name, Reader reader) throws IOException {
+		char[] keys = new char[64];
+		double[] x = new double[64];
+		double[] y = new double[64];
+		int keyCount = 0;
+		int row = 0;
+
+		BufferedReader lines = new BufferedReader(reader);
+		String line;
+		while ((line = lines.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty() || line.charAt(0) == '#') continue;
+
+			String[] parts = line.split("\\s+", 2);
+			double offset;
+			try {
+				offset = Double.parseDouble(parts[0]);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("invalid offset in line '" + line + "' of layout " + name);
+			}
+			String rowKeys = parts.length > 1 ? parts[1] : "";
+			for (int column = 0; column < rowKeys.length(); column++) {
+				char key = rowKeys.charAt(column);
+				for (int i = 0; i < keyCount; i++) {
+					if (keys[i] == key) throw new IllegalArgumentException("key '" + key + "' occurs twice in layout " + name);
+				}
+				if (keyCount == keys.length) {
+					keys = Arrays.copyOf(keys, keyCount * 2);
+					x = Arrays.copyOf(x, keyCount * 2);
+					y = Arrays.copyOf(y, keyCount * 2);
+				}
+				keys[keyCount] = key;
+				x[keyCount] = offset + column;
+				y[keyCount] = row;
+				keyCount++;
+			}
+			row++;
+		}
+		return new KeyboardLayout(name, Arrays.copyOf(keys, keyCount), Arrays.copyOf(x, keyCount),
+				Arrays.copyOf(y, keyCount));
+	}
+
+	/**
+	 * @return number of keys
+	 */
+	public int size() {
+		return keys.length;
+	}
+
+	public char getKey(int keyNr) {
+		return keys[keyNr];
+	}
+
+	/**
+	 * @return distance of the centers of the two keys in key widths
+	 */
+	public double distance(int keyNr1, int keyNr2) {
+		double dx = x[keyNr1] - x[keyNr2];
+		double dy = y[keyNr1] - y[keyNr2];
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+}
@@ -0,0 +1,71 @@
+package de.cxp.predict.common;
+
+/**
+ * Lower bound of {@link WeightedDamerauLevenshtein} that only compares which
+ * letters occur in both strings. Every char maps to one of 64 bits, the
+ * signature of a string has the bits of all its chars set. A char of the one
+ * string that doesn't occur in the other one can't be passed for free, it has
+ * to be deleted, inserted or replaced, and a replacement covers at most one
+ * such char of each string. So both strings are at least as many edits apart
+ * as one of them has bits that the other one doesn't have. Chars that share a
+ * bit only make the bound weaker.
+ *
+ * Unlike a bag distance or a q-gram count, it doesn't count how often a char
+ * occurs: the weighted recurrence passes repeated chars for free ("a" to
+ * "aaaa" has a distance of 0).
+ */
+public class LetterSignatureBound implements DistanceFilter {
+
+	// bit of the Latin-1 chars: letters and digits get bits of their own as
+	// far as possible, the others share the remaining bits
+	private static final byte[] LATIN1_BITS = new byte[256];
+	static {
+		for (int c = 0; c < LATIN1_BITS.length; c++) {
+			int bit;
+			if (c >= 'a' && c <= 'z') bit = c - 'a';
+			else if (c >= 'A' && c <= 'Z') bit = c - 'A';
+			else if (c >= '0' && c <= '9') bit = 26 + c - '0';
+			else if (c >= 0xC0) bit = 36 + (c - 0xC0) % 28;
+			else bit = 36 + c % 28;
+			LATIN1_BITS[c] = (byte) bit;
+		}
+	}
+
+	private String pattern = "";
+
+	/**
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return the signature of the given range
+	 */
+	public static long signature(CharSequence s, int start, int end) {
+		long signature = 0;
+		for (int i = start; i < end; i++) {
+			signature |= 1L << bit(s.charAt(i));
+		}
+		return signature;
+	}
+
+	private static int bit(char c) {
+		return c < LATIN1_BITS.length ? LATIN1_BITS[c] : 36 + c % 28;
+	}
+
+	@Override
+	public void setPattern(String pattern) {
+		this.pattern = pattern;
+	}
+
+	/**
+	 * Returns false if replacements are not counted, because a replacement
+	 * without weight can pass any char for free.
+	 */
+	@Override
+	public boolean exceeds(int aStart, int aEnd, CharSequence b, int bStart, int bEnd, int maxEdits,
+			boolean countReplacements) {
+		if (!countReplacements) return false;
+		long a = signature(pattern, aStart, aEnd);
+		long other = signature(b, bStart, bEnd);
+		return Math.max(Long.bitCount(a & ~other), Long.bitCount(other & ~a)) > maxEdits;
+	}
+}
@@ -8,6 +8,10 @@ import lombok.RequiredArgsConstructor;
 /**
  * Optimized version of Jaro+Winkler calculation.
  * 
+ * Words up to 64 chars are compared with a bit mask of the matched chars of
+ * each word, so they don't allocate anything. Longer words fall back to
+ * buffers of their size.
+ * 
  * @author Andreas Wagner
  */
 @RequiredArgsConstructor
@@ -22,6 +26,8 @@ public class PrefixProximity {
 	@Getter
 	private final float threshold;
 
+	public static final int MAX_BITMASK_LENGTH = 64;
+
 	public PrefixProximity() {
 		this(0.7f);
 	}
@@ -84,13 +90,63 @@ public class PrefixProximity {
 	}
 
 	public float distance(String s1, String s2) {
-		int[] mtp = matches(s1, s2);
-		float m = mtp[0];
+		if (s1.length() > MAX_BITMASK_LENGTH || s2.length() > MAX_BITMASK_LENGTH) {
+			int[] mtp = matches(s1, s2);
+			return distance(s1, s2, mtp[0], mtp[1], mtp[2], mtp[3]);
+		}
+
+		String max, min;
+		if (s1.length() > s2.length()) {
+			max = s1;
+			min = s2;
+		} else {
+			max = s2;
+			min = s1;
+		}
+		int range = Math.max(max.length() / 2 - 1, 0);
+		// bit i is set if the char at position i is matched
+		long minFlags = 0;
+		long maxFlags = 0;
+		int matches = 0;
+		for (int mi = 0; mi < min.length(); mi++) {
+			char c1 = min.charAt(mi);
+			for (int xi = Math.max(mi - range, 0), xn = Math.min(mi + range + 1, max
+					.length()); xi < xn; xi++) {
+				if ((maxFlags & (1L << xi)) == 0 && c1 == max.charAt(xi)) {
+					minFlags |= 1L << mi;
+					maxFlags |= 1L << xi;
+					matches++;
+					break;
+				}
+			}
+		}
+		// the n-th matched char of min is compared to the n-th one of max
+		int transpositions = 0;
+		while (minFlags != 0) {
+			if (min.charAt(Long.numberOfTrailingZeros(minFlags)) != max.charAt(Long.numberOfTrailingZeros(maxFlags))) {
+				transpositions++;
+			}
+			minFlags &= minFlags - 1;
+			maxFlags &= maxFlags - 1;
+		}
+		int prefix = 0;
+		for (int mi = 0; mi < min.length(); mi++) {
+			if (s1.charAt(mi) == s2.charAt(mi)) {
+				prefix++;
+			} else {
+				break;
+			}
+		}
+		return distance(s1, s2, matches, transpositions / 2, prefix, max.length());
+	}
+
+	private float distance(String s1, String s2, int matches, int transpositions, int prefix, int maxLength) {
+		float m = matches;
 		if (m == 0) {
 			return 0f;
 		}
-		float j = ((m / s1.length() + m / s2.length() + (m - mtp[1]) / m)) / 3;
-		float jw = j < getThreshold() ? j : j + Math.min(0.1f, 1f / mtp[3]) * mtp[2]
+		float j = ((m / s1.length() + m / s2.length() + (m - transpositions) / m)) / 3;
+		float jw = j < getThreshold() ? j : j + Math.min(0.1f, 1f / maxLength) * prefix
 				* (1 - j);
 		return jw;
 	}
@@ -1,26 +1,30 @@
 package de.cxp.predict.common;
 
 import java.util.HashMap;
+import java.util.Map;
 
 import de.cxp.predict.api.CharDistance;
 
+/**
+ * The hand tuned distances of the German QWERTZ keyboard. See
+ * {@link KeyboardDistance} for distances that are derived from the key
+ * positions of other layouts.
+ */
 public class QwertzKeyboardDistance implements CharDistance {
 
 	@Override
 	public double distance(char a, char b) {
-		return qwertzKeyboardDistance(a, b);
+		return keyboardDistance.distance(a, b);
 	}
-	
-	private static double qwertzKeyboardDistance(char a, char b) {
-		String key1 = String.valueOf(a) + String.valueOf(b);
-		String key2 = String.valueOf(b) + String.valueOf(a);
-		if (qwertzCharMap.containsKey(key1)) return (1 - qwertzCharMap.get(key1));
-		if (qwertzCharMap.containsKey(key2)) return (1 - qwertzCharMap.get(key2));
-		else return 1;
+
+	@Override
+	public double minDistance() {
+		return keyboardDistance.minDistance();
 	}
 	
 	// CXP QWERTY Keyboard Proximity CharMap - dependent on keyboard type
 	static HashMap<String, Double> qwertzCharMap = new HashMap<String, Double>();
+	private static final KeyboardDistance keyboardDistance;
 	static {
 		double d1 = 0.4; // weight for keyboard proximity = 1
 		double d2 = 0.1; // weight for keyboard proximity = 2
@@ -196,6 +200,10 @@ public class QwertzKeyboardDistance implements CharDistance {
 		qwertzCharMap.put("w3", d2);
 
 		qwertzCharMap.put("xy", d1);
+
+		Map<String, Double> pairDistances = new HashMap<>();
+		qwertzCharMap.forEach((pair, proximity) -> pairDistances.put(pair, 1 - proximity));
+		keyboardDistance = new KeyboardDistance(pairDistances);
 	}
 	
 }
@@ -0,0 +1,159 @@
+package de.cxp.predict.common;
+
+import de.cxp.predict.api.CharDistance;
+
+/**
+ * The weighted Damerau-Levenshtein distance of PreDict. The weight of an edit
+ * depends on the position of the cell in the matrix: cells on the diagonal
+ * are replacements (weighted by the char distance) or transpositions, cells
+ * above it are deletions and cells below it are insertions.
+ *
+ * Only distances up to a given maximum are calculated. Since no edit has a
+ * negative weight, a cell above the maximum can't lead to a cell below it,
+ * so these cells are dropped. Each row is only evaluated in the band of
+ * columns that can be reached from the remaining cells of the previous two
+ * rows, and the calculation stops once two rows in a row exceed the maximum.
+ * The matrix is kept in three rolling rows that are passed by the caller.
+ */
+public class WeightedDamerauLevenshtein {
+
+	private static final double EXCEEDED = Double.POSITIVE_INFINITY;
+
+	private final double deletionWeight;
+	private final double insertionWeight;
+	private final double replaceWeight;
+	private final double transpositionWeight;
+	private final CharDistance replacementDistance;
+
+	public WeightedDamerauLevenshtein(double deletionWeight, double insertionWeight, double replaceWeight,
+			double transpositionWeight, CharDistance replacementDistance) {
+		this.deletionWeight = deletionWeight;
+		this.insertionWeight = insertionWeight;
+		this.replaceWeight = replaceWeight;
+		this.transpositionWeight = transpositionWeight;
+		this.replacementDistance = replacementDistance;
+	}
+
+	/**
+	 * @param length
+	 *        length of the first string
+	 * @return the size of the rows array needed by
+	 *         {@link #distance(String, int, int, String, int, int, double, double[])}
+	 */
+	public static int rowsSize(int length) {
+		return 3 * (length + 1);
+	}
+
+	/**
+	 * Calculates the distance from the range of string a to the range of
+	 * string b.
+	 *
+	 * @param a
+	 * @param aStart
+	 * @param aEnd
+	 * @param b
+	 * @param bStart
+	 * @param bEnd
+	 * @param maxDistance
+	 *        distances above it are not calculated
+	 * @param rows
+	 *        scratch space of at least {@link #rowsSize(int)} for the length
+	 *        of the range of a
+	 * @return the distance or {@link Double#POSITIVE_INFINITY} if it's greater
+	 *         than maxDistance. If one of the ranges is empty, it's the
+	 *         unweighted length of the other one, even if that is greater
+	 *         than maxDistance.
+	 */
+	public double distance(String a, int aStart, int aEnd, String b, int bStart, int bEnd, double maxDistance,
+			double[] rows) {
+		int n = aEnd - aStart;
+		int m = bEnd - bStart;
+		if (n == 0) return m;
+		if (m == 0) return n;
+
+		int width = n + 1;
+		// offsets of the rows j-2, j-1 and j
+		int row2 = 0;
+		int row1 = width;
+		int row = 2 * width;
+		// columns of the cells within maxDistance, empty if lo > hi
+		int lo2 = 1, hi2 = 0;
+		int lo1, hi1;
+
+		// first row: deletions only
+		rows[row1] = 0;
+		lo1 = 0;
+		hi1 = 0;
+		for (int i = 1; i <= n; i++) {
+			double value = i * deletionWeight;
+			if (value > maxDistance) break;
+			rows[row1 + i] = value;
+			hi1 = i;
+		}
+
+		for (int j = 1; j <= m; j++) {
+			char b_j = b.charAt(bStart + j - 1);
+			double first = j;
+			boolean firstInRange = first <= maxDistance;
+
+			int lo = firstInRange ? 0 : Integer.MAX_VALUE;
+			int hi = -1;
+			if (firstInRange) {
+				rows[row] = first;
+				hi = 0;
+			}
+
+			int start = 1;
+			if (!firstInRange) {
+				start = Math.max(1, Math.min(lo1 <= hi1 ? lo1 : Integer.MAX_VALUE, lo2 <= hi2 ? lo2 + 2 : Integer.MAX_VALUE));
+			}
+			double left = start == 1 && firstInRange ? first : EXCEEDED;
+			for (int i = start; i <= n; i++) {
+				char a_i = a.charAt(aStart + i - 1);
+				double diagonal = i - 1 >= lo1 && i - 1 <= hi1 ? rows[row1 + i - 1] : EXCEEDED;
+				double up = i >= lo1 && i <= hi1 ? rows[row1 + i] : EXCEEDED;
+
+				// CXP Damerau operations
+				double min = Math.min(diagonal, Math.min(up, left));
+				double value;
+				if (a_i == b_j) {
+					value = min;
+				} else if (i == j) {
+					value = min + (replaceWeight * replacementDistance.distance(b_j, a_i)); // replace
+
+					if (i > 1 && a_i == b.charAt(bStart + j - 2) && a.charAt(aStart + i - 2) == b_j) {
+						double transposed = i - 2 >= lo2 && i - 2 <= hi2 ? rows[row2 + i - 2] : EXCEEDED;
+						value = Math.min(value, transposed + transpositionWeight); // transpose
+					}
+				} else if (i > j) {
+					value = min + deletionWeight; // delete
+				} else {
+					value = min + insertionWeight; // insert
+				}
+
+				if (value > maxDistance) {
+					value = EXCEEDED;
+					// nothing right of here can be reached anymore
+					if (i > hi1 && i - 1 > hi2) break;
+				} else {
+					if (lo > i) lo = i;
+					hi = i;
+				}
+				rows[row + i] = value;
+				left = value;
+			}
+
+			if (lo > hi && lo1 > hi1) return EXCEEDED;
+
+			int free = row2;
+			row2 = row1;
+			lo2 = lo1;
+			hi2 = hi1;
+			row1 = row;
+			lo1 = lo;
+			hi1 = hi;
+			row = free;
+		}
+		return n >= lo1 && n <= hi1 ? rows[row1 + n] : EXCEEDED;
+	}
+}
@@ -1,17 +1,12 @@
 package de.cxp.predict.customizing;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 import java.util.regex.Pattern;
 
 import de.cxp.predict.api.CharDistance;
 import de.cxp.predict.api.PreDictSettings;
 import de.cxp.predict.api.SuggestItem;
-import de.cxp.predict.common.Eudex;
-import de.cxp.predict.common.FragmentProximity;
-import de.cxp.predict.common.PrefixProximity;
 import de.cxp.predict.common.QwertzKeyboardDistance;
 import lombok.Getter;
 import lombok.NonNull;
@@ -25,7 +20,7 @@ public class CommunityCustomization extends NoopPreDictCustomizing {
 	// remove pattern for cleansing during search
 	private static final Pattern removePattern = Pattern.compile("[^\\p{L}\\p{N}\\p{Z}]");
 
-	private final CharDistance keyboardDistance = new QwertzKeyboardDistance();
+	private final CharDistance keyboardDistance;
 
 	// Proximity function variables
 	private final double editWeight = 1.2; // 0.9
@@ -35,22 +30,42 @@ public class CommunityCustomization extends NoopPreDictCustomizing {
 	private final double wordFrequencyWeight = 0; // 0.0
 	private final double divisor = editWeight + phoneWeight + prefixWeight + fragmentWeight + wordFrequencyWeight;
 
-	private final PrefixProximity prefixProximity = new PrefixProximity();
-	
-	private Comparator<SuggestItem> proximityComparator = new Comparator<SuggestItem>() {
-		public int compare(SuggestItem x, SuggestItem y) {
-			int compare = Double.compare(x.proximity, y.proximity);
-			if (compare == 0) compare = Integer.compare(x.count, y.count);
-			return -1 * compare;
-		}
-	};
+	// the arrays of a scorer are reused by the lookups of its thread
+	private final ThreadLocal<ProximityScorer> scorers;
 
-	// save for internal calculation
-	private final double maxEditDistance;
+	// true if a subclass overrides getCombinedProximity
+	private final boolean customCombinedProximity;
 	
 	public CommunityCustomization(PreDictSettings settings) {
+		this(settings, new QwertzKeyboardDistance());
+	}
+
+	/**
+	 * @param settings
+	 * @param keyboardDistance
+	 *        replacement distance of the chars, for example a
+	 *        {@link de.cxp.predict.common.KeyboardDistance} of the keyboard
+	 *        layout of the users
+	 */
+	public CommunityCustomization(PreDictSettings settings, @NonNull CharDistance keyboardDistance) {
 		this.settings = settings;
-		maxEditDistance = settings.getEditDistanceMax();
+		this.keyboardDistance = keyboardDistance;
+		double maxEditDistance = settings.getEditDistanceMax();
+		scorers = ThreadLocal.withInitial(() -> new ProximityScorer(maxEditDistance, editWeight, phoneWeight,
+				fragmentWeight, prefixWeight, wordFrequencyWeight));
+		customCombinedProximity = overridesCombinedProximity();
+	}
+
+	private boolean overridesCombinedProximity() {
+		for (Class<?> c = getClass(); c != CommunityCustomization.class; c = c.getSuperclass()) {
+			try {
+				c.getDeclaredMethod("getCombinedProximity", String.class, SuggestItem.class);
+				return true;
+			} catch (NoSuchMethodException e) {
+				// not overridden by this class
+			}
+		}
+		return false;
 	}
 
 	@Override
@@ -70,32 +85,58 @@ public class CommunityCustomization extends NoopPreDictCustomizing {
 	}
 
 	@Override
-	public List<SuggestItem> adjustFinalResult(String searchWord, List<SuggestItem> result) {
-		List<SuggestItem> sortedResult = new ArrayList<>();
-		long searchWordEudex = Eudex.encode(searchWord);
-
-		for (SuggestItem s : result) {
-			s.editProximity = (maxEditDistance - s.distance) / maxEditDistance;
-
-			s.phoneticProximity = Eudex.distance(searchWordEudex, Eudex.encode(s.term));
-			// we are using EUDEX but have to normalize the distance by
-			// 1-(LN(eudexDistance+1)/9)
-			s.phoneticProximity = (1 - ((Math.log(s.phoneticProximity + 1) / Math.log(10) / 9)));
+	public double getMinReplacementDistance() {
+		return keyboardDistance.minDistance();
+	}
 
-			s.fragmentProximity = FragmentProximity.distance(searchWord, s.term);
-			s.prefixProximity = prefixProximity.distance(searchWord, s.term);
+	@Override
+	public boolean usesWordFeatures() {
+		return true;
+	}
 
-			s.proximity = getCombinedProximity(searchWord, s);
+	/**
+	 * Ranks the suggestions with the {@link ProximityScorer} of the thread and
+	 * copies the proximities back to them.
+	 */
+	@Override
+	public List<SuggestItem> adjustFinalResult(String searchWord, List<SuggestItem> result) {
+		ProximityScorer scorer = scorers.get();
+		scorer.reset(searchWord);
+		for (SuggestItem s : result) {
+			scorer.add(s.term, s.count, s.distance, s.wordFrequency, s.features);
+		}
+		if (customCombinedProximity) {
+			scorer.scoreComponents();
+		} else {
+			scorer.score();
+		}
 
-			sortedResult.add(s);
+		for (int i = 0; i < result.size(); i++) {
+			SuggestItem s = result.get(i);
+			s.editProximity = scorer.getEditProximity(i);
+			s.phoneticProximity = scorer.getPhoneticProximity(i);
+			s.fragmentProximity = scorer.getFragmentProximity(i);
+			s.prefixProximity = scorer.getPrefixProximity(i);
+			if (customCombinedProximity) {
+				scorer.setProximity(i, getCombinedProximity(searchWord, s));
+			}
+			s.proximity = scorer.getProximity(i);
 		}
-		
+
 		// sort by descending proximity, then by descending word
 		// frequency/language probability
-		Collections.sort(sortedResult, proximityComparator);
+		int selected = scorer.select(result.size());
+		List<SuggestItem> sortedResult = new ArrayList<>(selected);
+		for (int rank = 0; rank < selected; rank++) {
+			sortedResult.add(result.get(scorer.candidate(rank)));
+		}
 		return sortedResult;
 	}
 
+	/**
+	 * Only called for subclasses that override it, the combined proximity is
+	 * computed by the {@link ProximityScorer} otherwise.
+	 */
 	protected double getCombinedProximity(String searchWord, SuggestItem s) {
 		return (s.editProximity * editWeight
 				+ s.phoneticProximity * phoneWeight
@@ -1,10 +1,12 @@
 package de.cxp.predict.customizing;
 
+import java.lang.reflect.Method;
 import java.util.List;
 
 import de.cxp.predict.PreDict.AccuracyLevel;
 import de.cxp.predict.api.PreDictSettings;
 import de.cxp.predict.api.SuggestItem;
+import de.cxp.predict.api.WordFeatures;
 
 public interface PreDictCustomizing {
 
@@ -44,6 +46,60 @@ public interface PreDictCustomizing {
 		return 1.0;
 	};
 
+	/**
+	 * Returns a lower bound of {@link #getReplacementDistance(char, char)} for
+	 * two different chars. It's used to skip the distance calculation of
+	 * candidates that need too many edits, so it must not be greater than any
+	 * replacement distance. By default it returns 1 if the default replacement
+	 * distance is used, otherwise 0, which is always correct, but doesn't count
+	 * replacements as edits.
+	 * 
+	 * @return minimum replacement distance
+	 */
+	default double getMinReplacementDistance() {
+		try {
+			Method replacementDistance = getClass().getMethod("getReplacementDistance", char.class, char.class);
+			return replacementDistance.getDeclaringClass() == PreDictCustomizing.class ? 1.0 : 0;
+		} catch (NoSuchMethodException e) {
+			return 0;
+		}
+	};
+
+	/**
+	 * If true, {@link #adjustDetailedDistance(String, String, double, int, int)}
+	 * gets the exact distance of every candidate. Otherwise distances that
+	 * can't make it into the result are not calculated, which is only correct
+	 * if the distances are not lowered afterwards. By default it returns true
+	 * if {@link #adjustDistance(String, String, double)} or
+	 * adjustDetailedDistance are overridden.
+	 * 
+	 * @return true if the distances are adjusted
+	 */
+	default boolean adjustsDistances() {
+		try {
+			Method adjustDistance = getClass().getMethod("adjustDistance", String.class, String.class,
+					double.class);
+			Method adjustDetailedDistance = getClass().getMethod("adjustDetailedDistance", String.class,
+					String.class, double.class, int.class, int.class);
+			return adjustDistance.getDeclaringClass() != PreDictCustomizing.class
+					|| adjustDetailedDistance.getDeclaringClass() != PreDictCustomizing.class;
+		} catch (NoSuchMethodException e) {
+			return true;
+		}
+	};
+
+	/**
+	 * If true, the {@link WordFeatures} of every word are computed when it's
+	 * indexed and passed to {@link #adjustFinalResult(String, List)} with the
+	 * suggestions. Returns false by default, since they need memory for every
+	 * word.
+	 * 
+	 * @return true if the word features are used
+	 */
+	default boolean usesWordFeatures() {
+		return false;
+	};
+
 	/**
 	 * Adjust the final distance before adding the candidate to the result list.
 	 * Returns the unchanged given distance by default.
@@ -60,7 +116,11 @@ public interface PreDictCustomizing {
 	/**
 	 * Adjust the distance after it got calculated with the edit distance logic
 	 * (cxp+damerau+levenshtein), that has no access to the common prefix and
-	 * suffix of these words.
+	 * suffix of these words. The distance is exact if
+	 * {@link #adjustsDistances()}. Otherwise distances above editDistanceMax,
+	 * above the best suggestion so far (if the accuracy level is not maximum)
+	 * or above the topK-th best suggestion so far (if it is maximum) are not
+	 * calculated, they are passed as Double.POSITIVE_INFINITY.
 	 * Returns the unchanged given distance by default.
 	 * 
 	 * @param searchWord the modified search word
@@ -78,7 +138,15 @@ public interface PreDictCustomizing {
 	/**
 	 * Can be used to filter and order the final result, which is already
 	 * truncated according to {@link AccuracyLevel} and sorted by
-	 * {@link SuggestItem.distance} and {@link SuggestItem.count}.
+	 * {@link SuggestItem.distance} and {@link SuggestItem.count}. The
+	 * {@link SuggestItem.features} are set, if {@link #usesWordFeatures()}.
+	 * 
+	 * The list and its items are working memory of the lookup, that is reused
+	 * by the next lookup with the same {@link de.cxp.predict.LookupContext}
+	 * (by default the one of the current thread). They are only valid during
+	 * this call and must not be kept, copy them if they are needed later. For
+	 * the same reason this method must not start another lookup with that
+	 * context. The list may be modified and returned.
 	 * 
 	 * @param searchWord the modified search word
 	 * @param result
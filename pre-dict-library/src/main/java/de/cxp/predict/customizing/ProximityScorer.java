@@ -0,0 +1,248 @@
+package de.cxp.predict.customizing;
+
+import java.util.Arrays;
+
+import de.cxp.predict.api.WordFeatures;
+import de.cxp.predict.common.Eudex;
+import de.cxp.predict.common.FragmentProximity;
+import de.cxp.predict.common.PrefixProximity;
+
+/**
+ * Scores the candidates of the final ranking of {@link CommunityCustomization}
+ * in one batch. The features of the candidates are kept in primitive arrays,
+ * one entry per candidate, and every proximity is computed for all candidates
+ * in a loop of its own, so the simple arithmetic ones can be vectorized by the
+ * JIT. The best candidates are selected by their number without sorting any
+ * objects.
+ *
+ * The arrays grow to the largest batch and are reused, so scoring doesn't
+ * allocate anything and a scorer is not thread safe. Usage:
+ *
+ * <pre>
+ * scorer.reset(searchWord);
+ * scorer.add(term, count, distance, wordFrequency, features); // for every candidate
+ * scorer.score();
+ * int selected = scorer.select(k);
+ * // scorer.candidate(0) ... scorer.candidate(selected - 1)
+ * </pre>
+ */
+public class ProximityScorer {
+
+	private final double maxEditDistance;
+	private final double editWeight;
+	private final double phoneWeight;
+	private final double fragmentWeight;
+	private final double prefixWeight;
+	private final double wordFrequencyWeight;
+	private final double divisor;
+
+	private final PrefixProximity prefixProximity = new PrefixProximity();
+
+	private String searchWord = "";
+	private long searchWordEudex;
+	private int[] searchWordBigrams = new int[16];
+	private int searchWordBigramCount;
+
+	private int size = 0;
+
+	// the candidates
+	private String[] terms = new String[16];
+	private int[] counts = new int[16];
+	private double[] distances = new double[16];
+	private double[] wordFrequencies = new double[16];
+	private long[] eudexes = new long[16];
+	private int[][] bigrams = new int[16][];
+
+	// their proximities
+	private double[] editProximities = new double[16];
+	private double[] phoneticProximities = new double[16];
+	private double[] fragmentProximities = new double[16];
+	private double[] prefixProximities = new double[16];
+	private double[] proximities = new double[16];
+
+	// candidate numbers by rank, after select
+	private int[] order = new int[16];
+
+	public ProximityScorer(double maxEditDistance, double editWeight, double phoneWeight, double fragmentWeight,
+			double prefixWeight, double wordFrequencyWeight) {
+		this.maxEditDistance = maxEditDistance;
+		this.editWeight = editWeight;
+		this.phoneWeight = phoneWeight;
+		this.fragmentWeight = fragmentWeight;
+		this.prefixWeight = prefixWeight;
+		this.wordFrequencyWeight = wordFrequencyWeight;
+		divisor = editWeight + phoneWeight + prefixWeight + fragmentWeight + wordFrequencyWeight;
+	}
+
+	/**
+	 * Drops all candidates and sets the search word of the next batch.
+	 *
+	 * @param searchWord
+	 */
+	public void reset(String searchWord) {
+		this.searchWord = searchWord;
+		searchWordEudex = Eudex.encode(searchWord);
+		if (searchWordBigrams.length < searchWord.length()) searchWordBigrams = new int[searchWord.length()];
+		searchWordBigramCount = FragmentProximity.sortedBigrams(searchWord, searchWordBigrams);
+		Arrays.fill(terms, 0, size, null);
+		Arrays.fill(bigrams, 0, size, null);
+		size = 0;
+	}
+
+	/**
+	 * @param term
+	 * @param count
+	 * @param distance
+	 * @param wordFrequency
+	 * @param features
+	 *        features of the term, computed from the term if null
+	 * @return number of the candidate
+	 */
+	public int add(String term, int count, double distance, double wordFrequency, WordFeatures features) {
+		if (size == terms.length) grow();
+		terms[size] = term;
+		counts[size] = count;
+		distances[size] = distance;
+		wordFrequencies[size] = wordFrequency;
+		eudexes[size] = features != null ? features.eudex : Eudex.encode(term);
+		bigrams[size] = features != null ? features.bigrams : null;
+		return size++;
+	}
+
+	private void grow() {
+		int capacity = terms.length * 2;
+		terms = Arrays.copyOf(terms, capacity);
+		counts = Arrays.copyOf(counts, capacity);
+		distances = Arrays.copyOf(distances, capacity);
+		wordFrequencies = Arrays.copyOf(wordFrequencies, capacity);
+		eudexes = Arrays.copyOf(eudexes, capacity);
+		bigrams = Arrays.copyOf(bigrams, capacity);
+		editProximities = new double[capacity];
+		phoneticProximities = new double[capacity];
+		fragmentProximities = new double[capacity];
+		prefixProximities = new double[capacity];
+		proximities = new double[capacity];
+		order = new int[capacity];
+	}
+
+	/**
+	 * @return number of candidates
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Computes the proximities of all candidates.
+	 */
+	public void score() {
+		scoreComponents();
+		for (int i = 0; i < size; i++) {
+			proximities[i] = (editProximities[i] * editWeight
+					+ phoneticProximities[i] * phoneWeight
+					+ fragmentProximities[i] * fragmentWeight
+					+ prefixProximities[i] * prefixWeight
+					+ wordFrequencies[i] * wordFrequencyWeight) / divisor;
+		}
+	}
+
+	/**
+	 * Computes the edit, phonetic, fragment and prefix proximity of all
+	 * candidates, but not the combined proximity. It has to be set with
+	 * {@link #setProximity(int, double)} then.
+	 */
+	public void scoreComponents() {
+		for (int i = 0; i < size; i++) {
+			editProximities[i] = (maxEditDistance - distances[i]) / maxEditDistance;
+		}
+
+		for (int i = 0; i < size; i++) {
+			phoneticProximities[i] = Eudex.distance(searchWordEudex, eudexes[i]);
+		}
+		// we are using EUDEX but have to normalize the distance by
+		// 1-(LN(eudexDistance+1)/9)
+		for (int i = 0; i < size; i++) {
+			phoneticProximities[i] = (1 - ((Math.log(phoneticProximities[i] + 1) / Math.log(10) / 9)));
+		}
+
+		for (int i = 0; i < size; i++) {
+			fragmentProximities[i] = bigrams[i] != null
+					? FragmentProximity.distance(searchWordBigrams, searchWordBigramCount, bigrams[i], bigrams[i].length)
+					: FragmentProximity.distance(searchWordBigrams, searchWordBigramCount, terms[i]);
+		}
+
+		for (int i = 0; i < size; i++) {
+			prefixProximities[i] = prefixProximity.distance(searchWord, terms[i]);
+		}
+	}
+
+	/**
+	 * Selects the k candidates with the highest proximity, ties are ordered by
+	 * descending count and then by the order in which they were added.
+	 *
+	 * @param k
+	 * @return number of selected candidates, at most k
+	 */
+	public int select(int k) {
+		if (k <= 0) return 0;
+		int selected = 0;
+		for (int i = 0; i < size; i++) {
+			if (selected == k && !ranksBefore(i, order[k - 1])) continue;
+			int rank = selected < k ? selected++ : k - 1;
+			while (rank > 0 && ranksBefore(i, order[rank - 1])) {
+				order[rank] = order[rank - 1];
+				rank--;
+			}
+			order[rank] = i;
+		}
+		return selected;
+	}
+
+	// candidates are added in ascending order, so equal ones stay in place
+	private boolean ranksBefore(int a, int b) {
+		int compare = Double.compare(proximities[a], proximities[b]);
+		if (compare == 0) compare = Integer.compare(counts[a], counts[b]);
+		return compare > 0;
+	}
+
+	/**
+	 * @param rank
+	 * @return number of the candidate at the given rank of the last
+	 *         {@link #select(int)}
+	 */
+	public int candidate(int rank) {
+		return order[rank];
+	}
+
+	public String getTerm(int candidate) {
+		return terms[candidate];
+	}
+
+	public int getCount(int candidate) {
+		return counts[candidate];
+	}
+
+	public double getEditProximity(int candidate) {
+		return editProximities[candidate];
+	}
+
+	public double getPhoneticProximity(int candidate) {
+		return phoneticProximities[candidate];
+	}
+
+	public double getFragmentProximity(int candidate) {
+		return fragmentProximities[candidate];
+	}
+
+	public double getPrefixProximity(int candidate) {
+		return prefixProximities[candidate];
+	}
+
+	public double getProximity(int candidate) {
+		return proximities[candidate];
+	}
+
+	public void setProximity(int candidate, double proximity) {
+		proximities[candidate] = proximity;
+	}
+}
@@ -0,0 +1,209 @@
+package de.cxp.predict.index;
+
+import de.cxp.predict.api.DictionaryItem;
+import gnu.trove.list.TIntList;
+
+/**
+ * Read-only index in the layout of a {@link IndexSnapshot}: an open addressing
+ * table of key hashes, where a positive reference is the single suggestion of
+ * a fragment and a negative reference points to an entry. The postings of
+ * entry e are located between offset(e) and offset(e+1).
+ *
+ * Subclasses only define where the data is stored.
+ */
+public abstract class CompactIndex implements DictionaryIndex {
+
+	static final int ABSENT = -2;
+
+	private final int size;
+	private final int maxlength;
+
+	protected CompactIndex(int size, int maxlength) {
+		this.size = size;
+		this.maxlength = maxlength;
+	}
+
+	protected abstract int tableCapacity();
+
+	protected abstract long key(int slot);
+
+	protected abstract int ref(int slot);
+
+	protected abstract int entryWordNr(int entry);
+
+	protected abstract int offset(int entry);
+
+	protected abstract int posting(int index);
+
+	/**
+	 * @return true if the word with that number is equal to the term
+	 */
+	protected abstract boolean isWord(CharSequence term, int wordNr);
+
+	/**
+	 * @return true if the term can be produced by deleting chars from the word
+	 *         with that number
+	 */
+	protected abstract boolean isFragmentOf(CharSequence term, int wordNr);
+
+	@Override
+	public int addCount(String word, int count) {
+		throw new UnsupportedOperationException("index is frozen");
+	}
+
+	@Override
+	public int addWord(String word) {
+		throw new UnsupportedOperationException("index is frozen");
+	}
+
+	@Override
+	public void addFragment(String fragment, int wordNr) {
+		throw new UnsupportedOperationException("index is frozen");
+	}
+
+	@Override
+	public int removeCount(String word, int count) {
+		throw new UnsupportedOperationException("index is frozen");
+	}
+
+	@Override
+	public boolean removeFragment(String fragment, int wordNr) {
+		throw new UnsupportedOperationException("index is frozen");
+	}
+
+	@Override
+	public void compact() {
+		// nothing is ever removed
+	}
+
+	@Override
+	public DictionaryItem read(String term, DictionaryItem reuse) {
+		return read(term, FragmentHash.hash(term), reuse);
+	}
+
+	@Override
+	public DictionaryItem read(CharSequence term, long hash, DictionaryItem reuse) {
+		int slot = findSlot(term, hash);
+		if (slot < 0) return null;
+
+		int ref = ref(slot);
+		reuse.suggestions.clear();
+		if (ref >= 0) {
+			reuse.count = 0;
+			reuse.wordNr = -1;
+			reuse.suggestions.add(ref);
+		} else {
+			int entry = -ref - 1;
+			int wordNr = entryWordNr(entry);
+			reuse.count = wordNr >= 0 ? getCount(wordNr) : 0;
+			reuse.wordNr = wordNr;
+			for (int i = offset(entry), end = offset(entry + 1); i < end; i++) {
+				reuse.suggestions.add(posting(i));
+			}
+		}
+		return reuse;
+	}
+
+	/**
+	 * Appends the suggestions of the given term to the list.
+	 *
+	 * @param term
+	 * @param hash
+	 *        hash of the term
+	 * @param offset
+	 *        added to every suggestion
+	 * @param suggestions
+	 * @return the number of the word that is equal to the term, -1 if the term
+	 *         is only a fragment and {@link #ABSENT} if it's unknown
+	 */
+	int collect(CharSequence term, long hash, int offset, TIntList suggestions) {
+		int slot = findSlot(term, hash);
+		if (slot < 0) return ABSENT;
+
+		int ref = ref(slot);
+		if (ref >= 0) {
+			suggestions.add(ref + offset);
+			return -1;
+		}
+		int entry = -ref - 1;
+		for (int i = offset(entry), end = offset(entry + 1); i < end; i++) {
+			suggestions.add(posting(i) + offset);
+		}
+		return entryWordNr(entry);
+	}
+
+	@Override
+	public int getWordNr(String term) {
+		int slot = findSlot(term, FragmentHash.hash(term));
+		if (slot < 0 || ref(slot) >= 0) return -1;
+		return entryWordNr(-ref(slot) - 1);
+	}
+
+	/**
+	 * @return true if any key has that hash, even if it may belong to another
+	 *         term
+	 */
+	boolean containsHash(long hash) {
+		int mask = tableCapacity() - 1;
+		int slot = (int) hash & mask;
+		long key;
+		while ((key = key(slot)) != 0) {
+			if (key == hash) return true;
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	private int findSlot(CharSequence term, long hash) {
+		int mask = tableCapacity() - 1;
+		int slot = (int) hash & mask;
+		long key;
+		while ((key = key(slot)) != 0) {
+			if (key == hash && matches(term, ref(slot))) return slot;
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	private boolean matches(CharSequence term, int ref) {
+		if (ref >= 0) return isFragmentOf(term, ref);
+
+		int entry = -ref - 1;
+		int wordNr = entryWordNr(entry);
+		if (wordNr >= 0) return isWord(term, wordNr);
+		return isFragmentOf(term, posting(offset(entry)));
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public int getMaxLength() {
+		return maxlength;
+	}
+
+	@Override
+	public void forEachEntry(EntryVisitor visitor) {
+		int[] suggestions = new int[16];
+		for (int slot = 0; slot < tableCapacity(); slot++) {
+			if (key(slot) == 0) continue;
+			int ref = ref(slot);
+			if (ref >= 0) {
+				suggestions[0] = ref;
+				visitor.visit(key(slot), -1, suggestions, 1);
+			} else {
+				int entry = -ref - 1;
+				int start = offset(entry);
+				int length = offset(entry + 1) - start;
+				if (length > suggestions.length) suggestions = new int[length];
+				for (int i = 0; i < length; i++) {
+					suggestions[i] = posting(start + i);
+				}
+				visitor.visit(key(slot), entryWordNr(entry), suggestions, length);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,232 @@
+package de.cxp.predict.index;
+
+import java.util.Arrays;
+
+/**
+ * Creates the deletes of words and search terms without temporary Strings.
+ *
+ * All terms are stored one after another in a reusable char buffer and are
+ * numbered in the order they are added, so the deletes of the terms can be
+ * generated breadth first by calling {@link #addDeletes(int)} for one term
+ * after another. The hash of a delete (see {@link FragmentHash}) is combined
+ * from the polynomial hashes of the chars before and after the deleted char,
+ * and duplicates are detected by a table of these hashes. A String is only
+ * created when it's requested with {@link #toString(int)}.
+ *
+ * Not thread safe, but it may be reused for any number of terms.
+ */
+public class DeleteGenerator {
+
+	private char[] chars = new char[256];
+	// term n consists of the chars from offsets[n] to offsets[n + 1]
+	private int[] offsets = new int[65];
+	private long[] hashes = new long[64];
+	private int size = 0;
+
+	// term number + 1 of every hash slot, 0 marks a free slot
+	private int[] table = new int[128];
+
+	// polynomial hashes of the prefixes of a term and the powers of the
+	// multiplier, needed to combine the hashes of the chars around a delete
+	private long[] prefixHashes = new long[32];
+	private long[] powers = new long[] { 1 };
+
+	private final Term term = new Term();
+
+	/**
+	 * Removes all terms.
+	 */
+	public void clear() {
+		if (size > 0) Arrays.fill(table, 0);
+		size = 0;
+	}
+
+	/**
+	 * Adds the given range of chars as a term, unless it's already contained.
+	 *
+	 * @param s
+	 * @param start
+	 * @param end
+	 * @return true if the term was added
+	 */
+	public boolean add(CharSequence s, int start, int end) {
+		int length = end - start;
+		long hash = FragmentHash.finish(FragmentHash.polynomial(s, start, end), length);
+		int mask = table.length - 1;
+		int slot = (int) hash & mask;
+		int ref;
+		while ((ref = table[slot]) != 0) {
+			if (hashes[ref - 1] == hash && equals(ref - 1, s, start, length)) return false;
+			slot = (slot + 1) & mask;
+		}
+		ensureCapacity(length);
+		for (int i = 0; i < length; i++) {
+			chars[offsets[size] + i] = s.charAt(start + i);
+		}
+		append(slot, hash, length);
+		return true;
+	}
+
+	/**
+	 * Adds every term, that is created by deleting one char of the given
+	 * term, in the order of the deleted char. Terms that are already
+	 * contained are skipped.
+	 *
+	 * @param termNr
+	 */
+	public void addDeletes(int termNr) {
+		int start = offsets[termNr];
+		int n = offsets[termNr + 1] - start;
+		if (n == 0) return;
+
+		if (prefixHashes.length <= n) prefixHashes = new long[Math.max(n + 1, prefixHashes.length * 2)];
+		if (powers.length < n) {
+			int i = powers.length;
+			powers = Arrays.copyOf(powers, Math.max(n, powers.length * 2));
+			for (; i < powers.length; i++) {
+				powers[i] = powers[i - 1] * FragmentHash.MULTIPLIER;
+			}
+		}
+		long[] prefix = prefixHashes;
+		for (int i = 0; i < n; i++) {
+			prefix[i + 1] = prefix[i] * FragmentHash.MULTIPLIER + chars[start + i];
+		}
+
+		for (int skip = 0; skip < n; skip++) {
+			// deleting the first of two equal chars gives the same term as
+			// deleting the second one
+			if (skip + 1 < n && chars[start + skip] == chars[start + skip + 1]) continue;
+
+			// the chars after the deleted one move one power down
+			long polynomial = prefix[n] + (prefix[skip] - prefix[skip + 1]) * powers[n - 1 - skip];
+			long hash = FragmentHash.finish(polynomial, n - 1);
+			int mask = table.length - 1;
+			int slot = (int) hash & mask;
+			int ref;
+			boolean contained = false;
+			while ((ref = table[slot]) != 0) {
+				if (hashes[ref - 1] == hash && isDelete(ref - 1, start, n, skip)) {
+					contained = true;
+					break;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if (contained) continue;
+
+			ensureCapacity(n - 1);
+			int target = offsets[size];
+			System.arraycopy(chars, start, chars, target, skip);
+			System.arraycopy(chars, start + skip + 1, chars, target + skip, n - 1 - skip);
+			append(slot, hash, n - 1);
+		}
+	}
+
+	/**
+	 * @return number of terms
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int length(int termNr) {
+		return offsets[termNr + 1] - offsets[termNr];
+	}
+
+	/**
+	 * @return the hash of the term, equal to {@link FragmentHash#hash(CharSequence)}
+	 */
+	public long hash(int termNr) {
+		return hashes[termNr];
+	}
+
+	/**
+	 * Returns a view of the term's chars. The view is reused by the next call
+	 * and must not be kept.
+	 *
+	 * @param termNr
+	 * @return the term
+	 */
+	public CharSequence get(int termNr) {
+		term.start = offsets[termNr];
+		term.length = offsets[termNr + 1] - term.start;
+		return term;
+	}
+
+	public String toString(int termNr) {
+		return new String(chars, offsets[termNr], length(termNr));
+	}
+
+	private boolean equals(int termNr, CharSequence s, int start, int length) {
+		if (length(termNr) != length) return false;
+		int offset = offsets[termNr];
+		for (int i = 0; i < length; i++) {
+			if (chars[offset + i] != s.charAt(start + i)) return false;
+		}
+		return true;
+	}
+
+	// compares the term with the chars of the range without the skipped one
+	private boolean isDelete(int termNr, int start, int n, int skip) {
+		if (length(termNr) != n - 1) return false;
+		int offset = offsets[termNr];
+		for (int i = 0; i < n - 1; i++) {
+			if (chars[offset + i] != chars[start + (i < skip ? i : i + 1)]) return false;
+		}
+		return true;
+	}
+
+	private void ensureCapacity(int length) {
+		int end = offsets[size] + length;
+		if (end > chars.length) chars = Arrays.copyOf(chars, Math.max(end, chars.length * 2));
+		if (size + 1 == hashes.length) {
+			hashes = Arrays.copyOf(hashes, hashes.length * 2);
+			offsets = Arrays.copyOf(offsets, hashes.length + 1);
+		}
+	}
+
+	private void append(int slot, long hash, int length) {
+		hashes[size] = hash;
+		offsets[size + 1] = offsets[size] + length;
+		table[slot] = ++size;
+		// keep the load factor below 0.5
+		if (size * 2 > table.length) rehash();
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		int mask = table.length - 1;
+		for (int termNr = 0; termNr < size; termNr++) {
+			int slot = (int) hashes[termNr] & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = termNr + 1;
+		}
+	}
+
+	private class Term implements CharSequence {
+
+		private int start;
+		private int length;
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			return chars[start + index];
+		}
+
+		@Override
+		public CharSequence subSequence(int start, int end) {
+			return new String(chars, this.start + start, end - start);
+		}
+
+		@Override
+		public String toString() {
+			return new String(chars, start, length);
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package de.cxp.predict.index;
+
+import de.cxp.predict.api.DictionaryItem;
+
+/**
+ * Storage of the words, their counts and the deletes (aka fragments) derived
+ * from them.
+ *
+ * Every key is either a word, a fragment or both. The suggestions of a key are
+ * the numbers of the words that produced this key as fragment. Word numbers are
+ * the positions of the words inside the wordlist.
+ */
+public interface DictionaryIndex {
+
+	/**
+	 * Adds to the count of the given word, which is created if it's unknown so
+	 * far. Counts are capped at Integer.MAX_VALUE.
+	 *
+	 * @param word
+	 * @param count
+	 *        positive count to add
+	 * @return the previous count of that word, 0 if it is new
+	 */
+	int addCount(String word, int count);
+
+	/**
+	 * Ensures the given word is part of the wordlist. Must be called once the
+	 * word is counted and before any fragment of it is added.
+	 *
+	 * @param word
+	 * @return the word number
+	 */
+	int addWord(String word);
+
+	/**
+	 * Adds the word with the given number to the suggestions of that fragment.
+	 * If the index is pruned, words with a higher length distance to the
+	 * fragment than the already indexed words are not added, and words of a
+	 * lower distance replace the existing ones.
+	 *
+	 * @param fragment
+	 * @param wordNr
+	 */
+	void addFragment(String fragment, int wordNr);
+
+	/**
+	 * Like {@link #addFragment(String, int)}, for a fragment whose hash is
+	 * already known. The fragment must not be kept.
+	 *
+	 * @param fragment
+	 * @param hash
+	 *        hash of the fragment, see {@link FragmentHash}
+	 * @param wordNr
+	 */
+	default void addFragment(CharSequence fragment, long hash, int wordNr) {
+		addFragment(fragment.toString(), wordNr);
+	}
+
+	/**
+	 * @param word
+	 * @return the number of that word or -1 if it is not indexed
+	 */
+	int getWordNr(String word);
+
+	/**
+	 * Subtracts from the count of the given word. Once the count drops to 0,
+	 * the word is removed: its number stays reserved with a count of 0 until
+	 * the index is compacted. The fragments of a removed word have to be
+	 * removed with {@link #removeFragment(String, int)}.
+	 *
+	 * @param word
+	 * @param count
+	 *        positive count to subtract
+	 * @return the previous count of that word, 0 if it is unknown
+	 */
+	int removeCount(String word, int count);
+
+	/**
+	 * Removes the word with the given number from the suggestions of that
+	 * fragment. A fragment without suggestions is removed, unless it is a
+	 * word itself.
+	 *
+	 * @param fragment
+	 * @param wordNr
+	 * @return true if no suggestion of the same length distance as the
+	 *         removed word is left. If the index is pruned, the words of the
+	 *         next higher distance have to be added again.
+	 */
+	boolean removeFragment(String fragment, int wordNr);
+
+	/**
+	 * Frees the space of removed words by renumbering the remaining ones.
+	 * Word numbers that were obtained before are invalid afterwards.
+	 */
+	void compact();
+
+	/**
+	 * Fragments of different segments are stored independently of each
+	 * other, so {@link #addFragment(String, int)} may be called by different
+	 * threads for fragments of different segments, as long as no other method
+	 * is called at the same time.
+	 *
+	 * @return the number of segments
+	 */
+	default int segments() {
+		return 1;
+	}
+
+	/**
+	 * @param fragment
+	 * @return the segment the fragment belongs to
+	 */
+	default int segmentOf(String fragment) {
+		return 0;
+	}
+
+	/**
+	 * Runs changes like {@link #addCount(String, int)} and its subsequent
+	 * calls. Indexes that can be searched during updates make the changes
+	 * visible at once when the update is done.
+	 *
+	 * @param changes
+	 */
+	default void update(Runnable changes) {
+		changes.run();
+	}
+
+	/**
+	 * @return an index that doesn't change while it is used, so all reads of
+	 *         a lookup see the same state
+	 */
+	default DictionaryIndex readView() {
+		return this;
+	}
+
+	/**
+	 * Reads the entry of the given term. The returned item must not be
+	 * modified by the caller and is only valid until the next call.
+	 *
+	 * @param term
+	 *        word or fragment
+	 * @param reuse
+	 *        item that may be filled and returned, if the index does not hold
+	 *        such objects itself
+	 * @return the entry or null if the term is unknown
+	 */
+	DictionaryItem read(String term, DictionaryItem reuse);
+
+	/**
+	 * Like {@link #read(String, DictionaryItem)}, for a term whose hash is
+	 * already known. Indexes with hashed keys don't need the term as String.
+	 *
+	 * @param term
+	 *        word or fragment, that must not be kept
+	 * @param hash
+	 *        hash of the term, see {@link FragmentHash}
+	 * @param reuse
+	 * @return the entry or null if the term is unknown
+	 */
+	default DictionaryItem read(CharSequence term, long hash, DictionaryItem reuse) {
+		return read(term.toString(), reuse);
+	}
+
+	String getWord(int wordNr);
+
+	/**
+	 * @param wordNr
+	 * @return the count of that word, 0 if it was removed
+	 */
+	int getCount(int wordNr);
+
+	/**
+	 * @return number of words in the wordlist
+	 */
+	int getWordCount();
+
+	/**
+	 * @return number of keys (words and fragments)
+	 */
+	int size();
+
+	/**
+	 * @return maximum length of the indexed words
+	 */
+	int getMaxLength();
+
+	/**
+	 * Passes every key with its hash (see {@link FragmentHash}), the number of
+	 * the word it is equal to (or -1) and its suggestions to the visitor.
+	 *
+	 * @param visitor
+	 */
+	void forEachEntry(EntryVisitor visitor);
+
+	public static interface EntryVisitor {
+
+		/**
+		 * @param hash
+		 *        hash of the key
+		 * @param wordNr
+		 *        the number of the word if the key is a word, otherwise -1
+		 * @param suggestions
+		 *        array that must not be modified nor kept
+		 * @param length
+		 *        number of valid suggestions in the array
+		 */
+		void visit(long hash, int wordNr, int[] suggestions, int length);
+	}
+
+}
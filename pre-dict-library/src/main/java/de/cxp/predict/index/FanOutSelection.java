@@ -0,0 +1,98 @@
+package de.cxp.predict.index;
+
+import java.util.Arrays;
+
+import gnu.trove.list.TIntList;
+
+/**
+ * Selects the words of a fragment with more words than a lookup checks: the
+ * most frequent ones, ties are broken by their position in the fragment. The
+ * selected words are kept in the order of the fragment, so the same budget
+ * always selects the same words in the same order.
+ *
+ * The buffers grow to the largest budget and are reused, so a selection is not
+ * thread safe.
+ */
+public final class FanOutSelection {
+
+	// a heap with the least frequent of the selected words on top, by their
+	// position in the fragment
+	private int[] positions = new int[0];
+	private int[] counts = new int[0];
+
+	private int[] words = new int[0];
+
+	/**
+	 * @param fragmentWords
+	 *        word numbers of the fragment
+	 * @param index
+	 *        index to read the counts from
+	 * @param budget
+	 *        positive maximum number of words to select
+	 * @return number of selected words
+	 */
+	public int select(TIntList fragmentWords, DictionaryIndex index, int budget) {
+		if (positions.length < budget) {
+			positions = new int[budget];
+			counts = new int[budget];
+			words = new int[budget];
+		}
+		int size = 0;
+		for (int i = 0; i < fragmentWords.size(); i++) {
+			int count = index.getCount(fragmentWords.get(i));
+			if (size < budget) {
+				siftUp(size++, i, count);
+			} else if (isMoreFrequent(i, count, 0)) {
+				siftDown(0, size, i, count);
+			}
+		}
+		// sorted positions restore the order of the fragment
+		Arrays.sort(positions, 0, size);
+		for (int i = 0; i < size; i++) {
+			words[i] = fragmentWords.get(positions[i]);
+		}
+		return size;
+	}
+
+	/**
+	 * @param i
+	 * @return number of the i-th word of the last selection
+	 */
+	public int get(int i) {
+		return words[i];
+	}
+
+	// compares the word at the position of the fragment to the one at the
+	// given node of the heap
+	private boolean isMoreFrequent(int position, int count, int node) {
+		return count > counts[node] || count == counts[node] && position < positions[node];
+	}
+
+	private void siftUp(int node, int position, int count) {
+		while (node > 0) {
+			int parent = (node - 1) >>> 1;
+			if (isMoreFrequent(position, count, parent)) break;
+			set(node, positions[parent], counts[parent]);
+			node = parent;
+		}
+		set(node, position, count);
+	}
+
+	private void siftDown(int node, int size, int position, int count) {
+		int half = size >>> 1;
+		while (node < half) {
+			int child = 2 * node + 1;
+			int right = child + 1;
+			if (right < size && isMoreFrequent(positions[child], counts[child], right)) child = right;
+			if (!isMoreFrequent(position, count, child)) break;
+			set(node, positions[child], counts[child]);
+			node = child;
+		}
+		set(node, position, count);
+	}
+
+	private void set(int node, int position, int count) {
+		positions[node] = position;
+		counts[node] = count;
+	}
+}
@@ -0,0 +1,88 @@
+package de.cxp.predict.index;
+
+/**
+ * Blocked Bloom filter over the keys of a frozen index, that rejects most of
+ * the terms a lookup probes but that are not in the index, before the much
+ * larger key table is read.
+ *
+ * The filter is split into blocks of 8 longs, which are 64 bytes and so one
+ * cache line. A key selects its block by the upper bits of its 64 bit hash
+ * (see {@link FragmentHash}) and sets one bit in each of the 8 longs, so a
+ * probe reads a single cache line. There are no false negatives. Since
+ * nothing is modified after it's built, it can be used by several threads at
+ * the same time.
+ */
+public class FragmentFilter {
+
+	private static final int BLOCK_LONGS = 8;
+
+	private final FrozenIndex index;
+	private final long[] bits;
+	private final long blocks;
+
+	private FragmentFilter(FrozenIndex index, int blocks) {
+		this.index = index;
+		this.blocks = blocks;
+		bits = new long[blocks * BLOCK_LONGS];
+	}
+
+	/**
+	 * Adds all keys of the index to a new filter.
+	 *
+	 * @param index
+	 * @param bitsPerKey
+	 *        positive number of bits per key. 10 bits reject about 99% of
+	 *        the absent terms.
+	 * @return the filter
+	 */
+	public static FragmentFilter of(FrozenIndex index, int bitsPerKey) {
+		long blocks = ((long) index.size() * bitsPerKey + 64 * BLOCK_LONGS - 1) / (64 * BLOCK_LONGS);
+		FragmentFilter filter = new FragmentFilter(index, (int) Math.max(1, Math.min(blocks, 1 << 27)));
+		index.forEachEntry((hash, wordNr, suggestions, length) -> filter.add(hash));
+		return filter;
+	}
+
+	private void add(long hash) {
+		int block = block(hash);
+		// 6 bits of the remixed hash per long select the bit to set
+		long h = hash * 0x9E3779B97F4A7C15L;
+		for (int i = 0; i < BLOCK_LONGS; i++) {
+			bits[block + i] |= 1L << (h >>> (6 * i));
+		}
+	}
+
+	/**
+	 * @param hash
+	 *        hash of the term
+	 * @return false if the index doesn't contain the term, true if it may
+	 *         contain it
+	 */
+	public boolean mightContain(long hash) {
+		int block = block(hash);
+		long h = hash * 0x9E3779B97F4A7C15L;
+		for (int i = 0; i < BLOCK_LONGS; i++) {
+			if ((bits[block + i] & (1L << (h >>> (6 * i)))) == 0) return false;
+		}
+		return true;
+	}
+
+	// maps the upper 32 bits of the hash to the blocks without a division
+	private int block(long hash) {
+		return (int) (((hash >>> 32) * blocks) >>> 32) * BLOCK_LONGS;
+	}
+
+	/**
+	 * @param index
+	 * @return true if the filter was built from the given index
+	 */
+	public boolean isOf(DictionaryIndex index) {
+		return this.index == index;
+	}
+
+	/**
+	 * @return size of the filter in bytes
+	 */
+	public long sizeInBytes() {
+		return 8L * bits.length;
+	}
+}
@@ -0,0 +1,60 @@
+package de.cxp.predict.index;
+
+/**
+ * 64 bit hash for words and fragments.
+ *
+ * It's a polynomial hash over the chars that is finalized with the murmur3 mix
+ * function. The polynomial part allows to combine the hashes of two strings
+ * without touching their chars again. The value 0 is never returned, so it can
+ * be used as empty marker.
+ */
+public class FragmentHash {
+
+	static final long MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+	public static long hash(CharSequence s) {
+		return finish(polynomial(s, 0, s.length()), s.length());
+	}
+
+	/**
+	 * @return the unfinished hash of the given char range
+	 */
+	public static long polynomial(CharSequence s, int start, int end) {
+		long h = 0;
+		for (int i = start; i < end; i++) {
+			h = h * MULTIPLIER + s.charAt(i);
+		}
+		return h;
+	}
+
+	/**
+	 * @param polynomial
+	 *        the polynomial hash of the chars
+	 * @param length
+	 *        the number of chars
+	 * @return the final hash value
+	 */
+	public static long finish(long polynomial, int length) {
+		long h = polynomial + length;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h == 0 ? MULTIPLIER : h;
+	}
+
+	/**
+	 * @return true if the fragment can be produced by deleting chars from the
+	 *         word
+	 */
+	public static boolean isFragmentOf(CharSequence fragment, String word) {
+		int n = fragment.length();
+		if (n >= word.length()) return false;
+		int i = 0;
+		for (int j = 0; i < n && j < word.length(); j++) {
+			if (fragment.charAt(i) == word.charAt(j)) i++;
+		}
+		return i == n;
+	}
+}
@@ -0,0 +1,168 @@
+package de.cxp.predict.index;
+
+/**
+ * Immutable and compact copy of another index, that is used to serve lookups
+ * once the index is built.
+ *
+ * The keys are kept in an open addressing table like in {@link HashedIndex}.
+ * Single suggestions are stored inline, all other suggestions are stored in one
+ * posting array, where the postings of entry e are located between
+ * offsets[e] and offsets[e+1]. The counts are stored parallel to the words, so
+ * there is no object per entry at all.
+ *
+ * Since nothing is modified, it can be used by several threads at the same
+ * time.
+ */
+public class FrozenIndex extends CompactIndex {
+
+	private static final float LOAD_FACTOR = 0.7f;
+
+	final String[] words;
+	final int[] counts;
+
+	final long[] keys;
+	final int[] refs;
+
+	final int[] entryWordNr;
+	final int[] offsets;
+	final int[] postings;
+
+	FrozenIndex(String[] words, int[] counts, long[] keys, int[] refs, int[] entryWordNr, int[] offsets,
+			int[] postings, int size, int maxlength) {
+		super(size, maxlength);
+		this.words = words;
+		this.counts = counts;
+		this.keys = keys;
+		this.refs = refs;
+		this.entryWordNr = entryWordNr;
+		this.offsets = offsets;
+		this.postings = postings;
+	}
+
+	/**
+	 * Creates a frozen copy of the given index.
+	 *
+	 * @param index
+	 * @return the frozen index
+	 */
+	public static FrozenIndex of(DictionaryIndex index) {
+		index = index.readView();
+		if (index instanceof FrozenIndex) return (FrozenIndex) index;
+
+		int wordCount = index.getWordCount();
+		String[] words = new String[wordCount];
+		int[] counts = new int[wordCount];
+		for (int i = 0; i < wordCount; i++) {
+			words[i] = index.getWord(i);
+			counts[i] = index.getCount(i);
+		}
+
+		int size = index.size();
+		long[] keys = new long[tableCapacity(size)];
+		int[] refs = new int[keys.length];
+		int mask = keys.length - 1;
+
+		// first pass: count entries and postings
+		int[] totals = new int[2];
+		index.forEachEntry((hash, wordNr, suggestions, length) -> {
+			if (wordNr >= 0 || length != 1) {
+				totals[0]++;
+				totals[1] += length;
+			}
+		});
+
+		int[] entryWordNr = new int[totals[0]];
+		int[] offsets = new int[totals[0] + 1];
+		int[] postings = new int[totals[1]];
+
+		// second pass: fill table and postings
+		int[] next = new int[2]; // next entry, next posting
+		index.forEachEntry((hash, wordNr, suggestions, length) -> {
+			int ref;
+			if (wordNr < 0 && length == 1) {
+				ref = suggestions[0];
+			} else {
+				int entry = next[0]++;
+				entryWordNr[entry] = wordNr;
+				offsets[entry] = next[1];
+				System.arraycopy(suggestions, 0, postings, next[1], length);
+				next[1] += length;
+				offsets[entry + 1] = next[1];
+				ref = -entry - 1;
+			}
+			int slot = (int) hash & mask;
+			while (keys[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			keys[slot] = hash;
+			refs[slot] = ref;
+		});
+
+		return new FrozenIndex(words, counts, keys, refs, entryWordNr, offsets, postings, size,
+				index.getMaxLength());
+	}
+
+	static int tableCapacity(int size) {
+		int capacity = 16;
+		while (capacity * LOAD_FACTOR < size) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	@Override
+	protected int tableCapacity() {
+		return keys.length;
+	}
+
+	@Override
+	protected long key(int slot) {
+		return keys[slot];
+	}
+
+	@Override
+	protected int ref(int slot) {
+		return refs[slot];
+	}
+
+	@Override
+	protected int entryWordNr(int entry) {
+		return entryWordNr[entry];
+	}
+
+	@Override
+	protected int offset(int entry) {
+		return offsets[entry];
+	}
+
+	@Override
+	protected int posting(int index) {
+		return postings[index];
+	}
+
+	@Override
+	protected boolean isWord(CharSequence term, int wordNr) {
+		return words[wordNr].contentEquals(term);
+	}
+
+	@Override
+	protected boolean isFragmentOf(CharSequence term, int wordNr) {
+		return FragmentHash.isFragmentOf(term, words[wordNr]);
+	}
+
+	@Override
+	public String getWord(int wordNr) {
+		return words[wordNr];
+	}
+
+	@Override
+	public int getCount(int wordNr) {
+		return counts[wordNr];
+	}
+
+	@Override
+	public int getWordCount() {
+		return words.length;
+	}
+
+}
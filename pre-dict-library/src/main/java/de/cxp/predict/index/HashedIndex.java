@@ -0,0 +1,572 @@
+package de.cxp.predict.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import de.cxp.predict.api.DictionaryItem;
+import gnu.trove.list.TIntList;
+
+/**
+ * Dictionary that stores words and fragments as 64 bit hashes inside an open
+ * addressing table (linear probing) instead of String keys.
+ *
+ * Each slot holds a reference: a positive value is the number of the single
+ * word that produced this fragment (the majority of entries), a negative value
+ * references an entry with a count and a posting list of word numbers.
+ *
+ * Since the keys are not stored, hash collisions are resolved against the
+ * wordlist: a word key has to be equal to its word and a fragment key has to
+ * be a fragment of its first suggestion. So two colliding keys end up in
+ * different slots.
+ *
+ * The table is split into segments by the upper bits of the hash. Segments
+ * don't share any state except the wordlist, so the fragments of different
+ * segments can be added by different threads.
+ *
+ * Removed keys are deleted from the table by shifting the following keys
+ * back. Removed words keep their place in the wordlist, since it's needed to
+ * verify the keys, until the index is compacted.
+ */
+public class HashedIndex implements DictionaryIndex {
+
+	private static final float LOAD_FACTOR = 0.6f;
+	private static final int SEGMENT_BITS = 6;
+
+	private final boolean pruned;
+	private final int prefixLength;
+
+	private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
+
+	// List of unique words. By using the suggestions (int) as index for this
+	// list they are translated into the original String.
+	private final List<String> wordlist = new ArrayList<String>();
+	private int[] wordSegments = new int[16];
+	// entry of each word, -1 for removed words
+	private int[] wordEntries = new int[16];
+	private int removedWords = 0;
+
+	private int maxlength = 0;
+
+	/**
+	 * @param pruned
+	 *        if true, only the words with the lowest distance to a fragment
+	 *        are kept as suggestions
+	 * @param prefixLength
+	 *        the length of the word prefixes the fragments are generated from
+	 */
+	public HashedIndex(boolean pruned, int prefixLength) {
+		this.pruned = pruned;
+		this.prefixLength = prefixLength;
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = new Segment();
+		}
+	}
+
+	private static int segmentOf(long hash) {
+		return (int) (hash >>> (64 - SEGMENT_BITS));
+	}
+
+	@Override
+	public int segments() {
+		return segments.length;
+	}
+
+	@Override
+	public int segmentOf(String fragment) {
+		return segmentOf(FragmentHash.hash(fragment));
+	}
+
+	@Override
+	public int addCount(String word, int count) {
+		long hash = FragmentHash.hash(word);
+		return segments[segmentOf(hash)].addCount(word, hash, count);
+	}
+
+	@Override
+	public int addWord(String word) {
+		long hash = FragmentHash.hash(word);
+		int segmentNr = segmentOf(hash);
+		Segment segment = segments[segmentNr];
+		int slot = segment.findSlot(word, hash);
+		if (slot < 0 || segment.refs[slot] >= 0) {
+			throw new IllegalStateException("word has to be counted before it is added: " + word);
+		}
+		int entry = toEntry(segment.refs[slot]);
+		if (segment.entryWordNr[entry] >= 0) return segment.entryWordNr[entry];
+
+		if (wordlist.size() == Integer.MAX_VALUE) {
+			throw new IllegalStateException("can not index word since wordlist reached limit of Integer.MAX_VALUE");
+		}
+		int wordNr = wordlist.size();
+		wordlist.add(word);
+		if (wordNr == wordEntries.length) {
+			wordSegments = Arrays.copyOf(wordSegments, wordNr * 2);
+			wordEntries = Arrays.copyOf(wordEntries, wordNr * 2);
+		}
+		wordSegments[wordNr] = segmentNr;
+		wordEntries[wordNr] = entry;
+		segment.entryWordNr[entry] = wordNr;
+		if (word.length() > maxlength) maxlength = word.length();
+		return wordNr;
+	}
+
+	@Override
+	public void addFragment(String fragment, int wordNr) {
+		addFragment(fragment, FragmentHash.hash(fragment), wordNr);
+	}
+
+	@Override
+	public void addFragment(CharSequence fragment, long hash, int wordNr) {
+		segments[segmentOf(hash)].addFragment(fragment, hash, wordNr);
+	}
+
+	@Override
+	public int getWordNr(String word) {
+		long hash = FragmentHash.hash(word);
+		Segment segment = segments[segmentOf(hash)];
+		int slot = segment.findSlot(word, hash);
+		if (slot < 0 || segment.refs[slot] >= 0) return -1;
+		return segment.entryWordNr[toEntry(segment.refs[slot])];
+	}
+
+	@Override
+	public int removeCount(String word, int count) {
+		long hash = FragmentHash.hash(word);
+		Segment segment = segments[segmentOf(hash)];
+		int slot = segment.findSlot(word, hash);
+		if (slot < 0 || segment.refs[slot] >= 0) return 0;
+		int entry = toEntry(segment.refs[slot]);
+		int wordNr = segment.entryWordNr[entry];
+		if (wordNr < 0) return 0;
+
+		int previousCount = segment.entryCount[entry];
+		if (count < previousCount) {
+			segment.entryCount[entry] = previousCount - count;
+			return previousCount;
+		}
+		// the key stays as long as it's a fragment of other words
+		segment.entryCount[entry] = 0;
+		segment.entryWordNr[entry] = -1;
+		if (segment.entrySize[entry] == 0) segment.delete(slot);
+		wordEntries[wordNr] = -1;
+		removedWords++;
+		return previousCount;
+	}
+
+	@Override
+	public boolean removeFragment(String fragment, int wordNr) {
+		long hash = FragmentHash.hash(fragment);
+		return segments[segmentOf(hash)].removeFragment(fragment, hash, wordNr);
+	}
+
+	@Override
+	public void compact() {
+		if (removedWords == 0) return;
+
+		int[] mapping = new int[wordlist.size()];
+		List<String> words = new ArrayList<>(wordlist.size() - removedWords);
+		int[] newWordSegments = new int[Math.max(16, wordlist.size() - removedWords)];
+		for (int wordNr = 0; wordNr < wordlist.size(); wordNr++) {
+			if (wordEntries[wordNr] < 0) {
+				mapping[wordNr] = -1;
+			} else {
+				mapping[wordNr] = words.size();
+				newWordSegments[words.size()] = wordSegments[wordNr];
+				words.add(wordlist.get(wordNr));
+			}
+		}
+		wordlist.clear();
+		wordlist.addAll(words);
+		wordSegments = newWordSegments;
+		wordEntries = new int[newWordSegments.length];
+		for (Segment segment : segments) {
+			segment.compact(mapping);
+		}
+		removedWords = 0;
+
+		maxlength = 0;
+		for (String word : wordlist) {
+			if (word.length() > maxlength) maxlength = word.length();
+		}
+	}
+
+	@Override
+	public DictionaryItem read(String term, DictionaryItem reuse) {
+		return read(term, FragmentHash.hash(term), reuse);
+	}
+
+	@Override
+	public DictionaryItem read(CharSequence term, long hash, DictionaryItem reuse) {
+		return segments[segmentOf(hash)].read(term, hash, reuse);
+	}
+
+	/**
+	 * Appends the suggestions of the given term to the list, like
+	 * {@link CompactIndex#collect(CharSequence, long, int, TIntList)} does.
+	 */
+	int collect(CharSequence term, long hash, int offset, TIntList suggestions) {
+		Segment segment = segments[segmentOf(hash)];
+		int slot = segment.findSlot(term, hash);
+		if (slot < 0) return CompactIndex.ABSENT;
+
+		int ref = segment.refs[slot];
+		if (ref >= 0) {
+			suggestions.add(ref + offset);
+			return -1;
+		}
+		int entry = toEntry(ref);
+		for (int i = 0; i < segment.entrySize[entry]; i++) {
+			suggestions.add(segment.entryPostings[entry][i] + offset);
+		}
+		return segment.entryWordNr[entry];
+	}
+
+	private static int toRef(int entry) {
+		return -entry - 1;
+	}
+
+	private static int toEntry(int ref) {
+		return -ref - 1;
+	}
+
+	@Override
+	public String getWord(int wordNr) {
+		return wordlist.get(wordNr);
+	}
+
+	@Override
+	public int getCount(int wordNr) {
+		if (wordEntries[wordNr] < 0) return 0;
+		return segments[wordSegments[wordNr]].entryCount[wordEntries[wordNr]];
+	}
+
+	@Override
+	public int getWordCount() {
+		return wordlist.size();
+	}
+
+	@Override
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size;
+		}
+		return size;
+	}
+
+	@Override
+	public int getMaxLength() {
+		return maxlength;
+	}
+
+	@Override
+	public void forEachEntry(EntryVisitor visitor) {
+		int[] single = new int[1];
+		for (Segment segment : segments) {
+			for (int slot = 0; slot < segment.keys.length; slot++) {
+				if (segment.keys[slot] == 0) continue;
+				int ref = segment.refs[slot];
+				if (ref >= 0) {
+					single[0] = ref;
+					visitor.visit(segment.keys[slot], -1, single, 1);
+				} else {
+					int entry = toEntry(ref);
+					int[] postings = segment.entryPostings[entry] == null ? single : segment.entryPostings[entry];
+					visitor.visit(segment.keys[slot], segment.entryWordNr[entry], postings, segment.entrySize[entry]);
+				}
+			}
+		}
+	}
+
+	private class Segment {
+
+		// table
+		long[] keys;
+		int[] refs;
+		int mask;
+		int size = 0;
+		int resizeAt;
+
+		// entries referenced by negative refs
+		int[] entryWordNr = new int[16];
+		int[] entryCount = new int[16];
+		int[][] entryPostings = new int[16][];
+		int[] entrySize = new int[16];
+		int entries = 0;
+
+		Segment() {
+			allocate(16);
+		}
+
+		private void allocate(int capacity) {
+			keys = new long[capacity];
+			refs = new int[capacity];
+			mask = capacity - 1;
+			resizeAt = (int) (capacity * LOAD_FACTOR);
+		}
+
+		int addCount(String word, long hash, int count) {
+			int slot = findSlot(word, hash);
+			int entry;
+			if (slot < 0) {
+				// this is a new word
+				entry = newEntry();
+				insert(~slot, hash, toRef(entry));
+			} else if (refs[slot] >= 0) {
+				// word is also a fragment from another word
+				entry = newEntry();
+				appendPosting(entry, refs[slot]);
+				refs[slot] = toRef(entry);
+			} else {
+				entry = toEntry(refs[slot]);
+			}
+
+			int previousCount = entryCount[entry];
+			// prevent overflow
+			entryCount[entry] = (int) Math.min((long) previousCount + count, Integer.MAX_VALUE);
+			return previousCount;
+		}
+
+		void addFragment(CharSequence fragment, long hash, int wordNr) {
+			int slot = findSlot(fragment, hash);
+			if (slot < 0) {
+				insert(~slot, hash, wordNr);
+				return;
+			}
+
+			int entry;
+			if (refs[slot] >= 0) {
+				if (refs[slot] == wordNr) return;
+				entry = newEntry();
+				appendPosting(entry, refs[slot]);
+				refs[slot] = toRef(entry);
+			} else {
+				entry = toEntry(refs[slot]);
+				// word numbers are added in ascending order, so only the last one
+				// can be the same
+				if (entrySize[entry] > 0 && entryPostings[entry][entrySize[entry] - 1] == wordNr) return;
+			}
+			addLowestDistance(entry, wordNr, fragment);
+		}
+
+		// save some time and space
+		private void addLowestDistance(int entry, int wordNr, CharSequence fragment) {
+			int indexedDistance = entrySize[entry] > 0
+					? Math.min(wordlist.get(entryPostings[entry][0]).length(), prefixLength) - fragment.length()
+					: -1;
+			int fragmentDistance = Math.min(wordlist.get(wordNr).length(), prefixLength) - fragment.length();
+
+			// remove all existing suggestions of higher distance
+			if (pruned && (indexedDistance > fragmentDistance)) {
+				entrySize[entry] = 0;
+			}
+
+			if (!pruned
+					|| (entrySize[entry] == 0)
+					|| (indexedDistance >= fragmentDistance)) {
+				appendPosting(entry, wordNr);
+			}
+		}
+
+		boolean removeFragment(String fragment, long hash, int wordNr) {
+			int slot = findSlot(fragment, hash);
+			if (slot < 0) return false;
+
+			int ref = refs[slot];
+			if (ref >= 0) {
+				if (ref != wordNr) return false;
+				delete(slot);
+				return true;
+			}
+			int entry = toEntry(ref);
+			int[] postings = entryPostings[entry];
+			int n = entrySize[entry];
+			int i = 0;
+			while (i < n && postings[i] != wordNr) {
+				i++;
+			}
+			if (i == n) return false;
+			System.arraycopy(postings, i + 1, postings, i, n - i - 1);
+			entrySize[entry] = --n;
+			if (n == 0 && entryWordNr[entry] < 0 && entryCount[entry] == 0) delete(slot);
+			return n == 0;
+		}
+
+		DictionaryItem read(CharSequence term, long hash, DictionaryItem reuse) {
+			int slot = findSlot(term, hash);
+			if (slot < 0) return null;
+
+			int ref = refs[slot];
+			reuse.suggestions.clear();
+			if (ref >= 0) {
+				reuse.count = 0;
+				reuse.wordNr = -1;
+				reuse.suggestions.add(ref);
+			} else {
+				int entry = toEntry(ref);
+				reuse.count = entryCount[entry];
+				reuse.wordNr = entryWordNr[entry];
+				if (entrySize[entry] > 0) reuse.suggestions.add(entryPostings[entry], 0, entrySize[entry]);
+			}
+			return reuse;
+		}
+
+		/**
+		 * @return the slot of that term or the bitwise complement of the free
+		 *         slot where it has to be inserted
+		 */
+		int findSlot(CharSequence term, long hash) {
+			int slot = (int) hash & mask;
+			long key;
+			while ((key = keys[slot]) != 0) {
+				if (key == hash && matches(term, refs[slot])) return slot;
+				slot = (slot + 1) & mask;
+			}
+			return ~slot;
+		}
+
+		private boolean matches(CharSequence term, int ref) {
+			if (ref >= 0) return FragmentHash.isFragmentOf(term, wordlist.get(ref));
+
+			int entry = toEntry(ref);
+			if (entryWordNr[entry] >= 0) return wordlist.get(entryWordNr[entry]).contentEquals(term);
+			// a word that is counted but not yet added can't be verified
+			if (entrySize[entry] == 0) return true;
+			return FragmentHash.isFragmentOf(term, wordlist.get(entryPostings[entry][0]));
+		}
+
+		private void insert(int slot, long hash, int ref) {
+			keys[slot] = hash;
+			refs[slot] = ref;
+			if (++size > resizeAt) rehash();
+		}
+
+		/**
+		 * Removes the key of that slot. The following keys of the same
+		 * cluster are shifted back if the hole lies between their home slot
+		 * and their current slot, so they are still found by linear probing.
+		 * The referenced entry is freed by {@link #compact(int[])}.
+		 */
+		void delete(int slot) {
+			int hole = slot;
+			int i = slot;
+			while (true) {
+				i = (i + 1) & mask;
+				if (keys[i] == 0) break;
+				int home = (int) keys[i] & mask;
+				boolean movable = i > hole ? (home <= hole || home > i) : (home <= hole && home > i);
+				if (movable) {
+					keys[hole] = keys[i];
+					refs[hole] = refs[i];
+					hole = i;
+				}
+			}
+			keys[hole] = 0;
+			refs[hole] = 0;
+			size--;
+		}
+
+		/**
+		 * Renumbers the words, drops unreferenced entries and shrinks the
+		 * table to its size.
+		 */
+		void compact(int[] mapping) {
+			long[] oldKeys = keys;
+			int[] oldRefs = refs;
+			int[] oldWordNr = entryWordNr;
+			int[] oldCount = entryCount;
+			int[][] oldPostings = entryPostings;
+			int[] oldSize = entrySize;
+
+			int capacity = 16;
+			while (capacity * LOAD_FACTOR < size) {
+				capacity <<= 1;
+			}
+			allocate(capacity);
+			int usedEntries = 0;
+			for (int ref : oldRefs) {
+				if (ref < 0) usedEntries++;
+			}
+			entryWordNr = new int[Math.max(16, usedEntries)];
+			entryCount = new int[entryWordNr.length];
+			entryPostings = new int[entryWordNr.length][];
+			entrySize = new int[entryWordNr.length];
+			entries = 0;
+
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] == 0) continue;
+				int ref = oldRefs[i];
+				if (ref >= 0) {
+					ref = mapping[ref];
+					// a fragment of a removed word, that was not removed
+					if (ref < 0) {
+						size--;
+						continue;
+					}
+				} else {
+					int oldEntry = toEntry(ref);
+					int entry = entries++;
+					int wordNr = oldWordNr[oldEntry] >= 0 ? mapping[oldWordNr[oldEntry]] : -1;
+					entryWordNr[entry] = wordNr;
+					entryCount[entry] = oldCount[oldEntry];
+					if (wordNr >= 0) wordEntries[wordNr] = entry;
+					int n = 0;
+					int[] postings = oldPostings[oldEntry];
+					for (int p = 0; p < oldSize[oldEntry]; p++) {
+						if (mapping[postings[p]] >= 0) postings[n++] = mapping[postings[p]];
+					}
+					entryPostings[entry] = n == 0 ? null : Arrays.copyOf(postings, n);
+					entrySize[entry] = n;
+					ref = toRef(entry);
+				}
+				int slot = (int) oldKeys[i] & mask;
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				refs[slot] = ref;
+			}
+		}
+
+		private void rehash() {
+			long[] oldKeys = keys;
+			int[] oldRefs = refs;
+			allocate(oldKeys.length * 2);
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] == 0) continue;
+				int slot = (int) oldKeys[i] & mask;
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				refs[slot] = oldRefs[i];
+			}
+		}
+
+		private int newEntry() {
+			if (entries == entryCount.length) {
+				int capacity = entries * 2;
+				entryWordNr = Arrays.copyOf(entryWordNr, capacity);
+				entryCount = Arrays.copyOf(entryCount, capacity);
+				entryPostings = Arrays.copyOf(entryPostings, capacity);
+				entrySize = Arrays.copyOf(entrySize, capacity);
+			}
+			entryWordNr[entries] = -1;
+			return entries++;
+		}
+
+		private void appendPosting(int entry, int wordNr) {
+			int[] postings = entryPostings[entry];
+			int n = entrySize[entry];
+			if (postings == null) {
+				postings = entryPostings[entry] = new int[2];
+			} else if (n == postings.length) {
+				postings = entryPostings[entry] = Arrays.copyOf(postings, n + (n >> 1) + 1);
+			}
+			postings[n] = wordNr;
+			entrySize[entry] = n + 1;
+		}
+	}
+
+}
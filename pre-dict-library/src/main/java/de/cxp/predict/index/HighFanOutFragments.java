@@ -0,0 +1,104 @@
+package de.cxp.predict.index;
+
+import gnu.trove.impl.Constants;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * The selected words of all fragments of a frozen index, that have more words
+ * than the fan-out budget of a lookup. They are selected once by
+ * {@link FanOutSelection}, so lookups of short search words only read the
+ * budget of words instead of scanning thousands of them.
+ *
+ * The fragments are keyed by their 64 bit hash (see {@link FragmentHash}),
+ * their words are stored in one array with budget words per fragment. Since
+ * nothing is modified, it can be used by several threads at the same time.
+ */
+public class HighFanOutFragments {
+
+	private final FrozenIndex index;
+	private final int budget;
+
+	// hash of the fragment -> offset of its words
+	private final TLongIntHashMap offsets;
+	private final int[] words;
+
+	private HighFanOutFragments(FrozenIndex index, int budget, int fragmentCount) {
+		this.index = index;
+		this.budget = budget;
+		offsets = new TLongIntHashMap(Math.max(fragmentCount, Constants.DEFAULT_CAPACITY),
+				Constants.DEFAULT_LOAD_FACTOR, 0, -1);
+		words = new int[fragmentCount * budget];
+	}
+
+	/**
+	 * Selects the words of all fragments with more than budget words.
+	 *
+	 * @param index
+	 * @param budget
+	 *        positive maximum number of words per fragment
+	 * @return the selected words
+	 */
+	public static HighFanOutFragments of(FrozenIndex index, int budget) {
+		int[] fragmentCount = new int[1];
+		index.forEachEntry((hash, wordNr, suggestions, length) -> {
+			if (length > budget) fragmentCount[0]++;
+		});
+
+		HighFanOutFragments fragments = new HighFanOutFragments(index, budget, fragmentCount[0]);
+		FanOutSelection selection = new FanOutSelection();
+		TIntArrayList fragmentWords = new TIntArrayList();
+		index.forEachEntry((hash, wordNr, suggestions, length) -> {
+			if (length <= budget) return;
+			fragmentWords.resetQuick();
+			fragmentWords.add(suggestions, 0, length);
+			selection.select(fragmentWords, index, budget);
+			int offset = fragments.offsets.size() * budget;
+			for (int i = 0; i < budget; i++) {
+				fragments.words[offset + i] = selection.get(i);
+			}
+			fragments.offsets.put(hash, offset);
+		});
+		return fragments;
+	}
+
+	/**
+	 * @param index
+	 * @return true if the words were selected from the given index
+	 */
+	public boolean isOf(DictionaryIndex index) {
+		return this.index == index;
+	}
+
+	/**
+	 * @param hash
+	 *        hash of the fragment
+	 * @return offset of the selected words of that fragment, -1 if it has no
+	 *         more words than the budget
+	 */
+	public int find(long hash) {
+		return offsets.get(hash);
+	}
+
+	/**
+	 * @param offset
+	 * @return the word number at the offset, see {@link #find(long)}
+	 */
+	public int getWord(int offset) {
+		return words[offset];
+	}
+
+	/**
+	 * @return number of fragments with more words than the budget
+	 */
+	public int size() {
+		return offsets.size();
+	}
+
+	/**
+	 * @return maximum number of words per fragment
+	 */
+	public int getBudget() {
+		return budget;
+	}
+}
@@ -0,0 +1,451 @@
+package de.cxp.predict.index;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import de.cxp.predict.PreDict.AccuracyLevel;
+import de.cxp.predict.api.PreDictSettings;
+
+/**
+ * Binary file format of a {@link FrozenIndex}.
+ *
+ * <pre>
+ * header (64 bytes):
+ *   int magic, int version, int editDistanceMax, int accuracyLevel,
+ *   int wordCount, int size, int tableCapacity, int entries,
+ *   int postingCount, int maxLength, long charCount, int prefixLength,
+ *   int minLengthCount, padding
+ * int[minLengthCount] minLengthsPerDistance of the settings
+ * int[wordCount+1]   char offsets of the words
+ * char[charCount]    chars of all words
+ * int[wordCount]     counts
+ * long[capacity]     table keys
+ * int[capacity]      table refs
+ * int[entries]       word number of each entry
+ * int[entries+1]     posting offsets of each entry
+ * int[postingCount]  postings
+ * </pre>
+ *
+ * All values are little endian and every section starts at a multiple of 8
+ * bytes. The format depends on {@link FragmentHash}, so any change there
+ * requires a new version.
+ */
+public class IndexSnapshot {
+
+	static final int MAGIC = 0x50444958; // PDIX
+	static final int VERSION = 4;
+	static final int HEADER_SIZE = 64;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	/**
+	 * Writes the index together with the settings it was built with. It's
+	 * written to a temporary file in the same directory first, that replaces
+	 * the file at the path once it's complete. So a crash never leaves a
+	 * partial snapshot at the path, and processes that mapped the former file
+	 * keep reading it until they open the new one.
+	 *
+	 * @param path
+	 * @param index
+	 * @param settings
+	 * @throws IOException
+	 */
+	public static void write(Path path, FrozenIndex index, PreDictSettings settings) throws IOException {
+		long charCount = 0;
+		for (String word : index.words) {
+			charCount += word.length();
+		}
+		if (charCount > Integer.MAX_VALUE) {
+			throw new IllegalStateException("can not write snapshot with more than Integer.MAX_VALUE chars");
+		}
+
+		Path directory = path.toAbsolutePath().getParent();
+		Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+		try {
+			writeTo(temp, index, settings, charCount);
+			Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static void writeTo(Path path, FrozenIndex index, PreDictSettings settings, long charCount)
+			throws IOException {
+		try (Output out = new Output(path)) {
+			out.putInt(MAGIC);
+			out.putInt(VERSION);
+			out.putInt(settings.getEditDistanceMax());
+			out.putInt(settings.getAccuracyLevel().ordinal());
+			out.putInt(index.words.length);
+			out.putInt(index.size());
+			out.putInt(index.keys.length);
+			out.putInt(index.entryWordNr.length);
+			out.putInt(index.postings.length);
+			out.putInt(index.getMaxLength());
+			out.putLong(charCount);
+			out.putInt(settings.getPrefixLength());
+			out.putInt(settings.getMinLengthsPerDistance().size());
+			out.align(HEADER_SIZE);
+			for (int minLength : settings.getMinLengthsPerDistance()) {
+				out.putInt(minLength);
+			}
+			out.align(8);
+
+			int offset = 0;
+			out.putInt(offset);
+			for (String word : index.words) {
+				offset += word.length();
+				out.putInt(offset);
+			}
+			out.align(8);
+			for (String word : index.words) {
+				out.putChars(word);
+			}
+			out.align(8);
+
+			out.putInts(index.counts);
+			out.align(8);
+			out.putLongs(index.keys);
+			out.putInts(index.refs);
+			out.align(8);
+			out.putInts(index.entryWordNr);
+			out.align(8);
+			out.putInts(index.offsets);
+			out.align(8);
+			out.putInts(index.postings);
+		}
+	}
+
+	/**
+	 * Reads the index from the given file, if it was built with settings that
+	 * are compatible to the given ones.
+	 *
+	 * @param path
+	 * @param settings
+	 * @return the index
+	 * @throws IOException
+	 *         if the file can't be read or is no snapshot of this version
+	 * @throws IllegalArgumentException
+	 *         if the snapshot was built with incompatible settings
+	 */
+	public static FrozenIndex read(Path path, PreDictSettings settings) throws IOException {
+		try (Input in = new Input(path)) {
+			Header header = readHeader(in);
+			header.verify(settings);
+			if (in.size() < header.length) throw new IOException("snapshot is truncated");
+
+			int[] wordOffsets = in.getInts(header.wordCount + 1);
+			in.align(8);
+			char[] chars = in.getChars((int) header.charCount);
+			in.align(8);
+			String[] words = new String[header.wordCount];
+			for (int i = 0; i < words.length; i++) {
+				words[i] = new String(chars, wordOffsets[i], wordOffsets[i + 1] - wordOffsets[i]);
+			}
+			chars = null;
+
+			int[] counts = in.getInts(header.wordCount);
+			in.align(8);
+			long[] keys = in.getLongs(header.tableCapacity);
+			int[] refs = in.getInts(header.tableCapacity);
+			in.align(8);
+			int[] entryWordNr = in.getInts(header.entries);
+			in.align(8);
+			int[] offsets = in.getInts(header.entries + 1);
+			in.align(8);
+			int[] postings = in.getInts(header.postingCount);
+
+			return new FrozenIndex(words, counts, keys, refs, entryWordNr, offsets, postings, header.size,
+					header.maxLength);
+		}
+	}
+
+	static Header readHeader(Input in) throws IOException {
+		Header header = new Header();
+		if (in.getInt() != MAGIC) throw new IOException("not a PreDict index snapshot");
+		header.version = in.getInt();
+		if (header.version != VERSION) {
+			throw new IOException("unsupported snapshot version " + header.version + ", expected " + VERSION);
+		}
+		header.editDistanceMax = in.getInt();
+		int accuracyLevel = in.getInt();
+		if (accuracyLevel < 0 || accuracyLevel >= AccuracyLevel.values().length) {
+			throw new IOException("unsupported accuracy level " + accuracyLevel + " in snapshot");
+		}
+		header.accuracyLevel = AccuracyLevel.values()[accuracyLevel];
+		header.wordCount = in.getInt();
+		header.size = in.getInt();
+		header.tableCapacity = in.getInt();
+		header.entries = in.getInt();
+		header.postingCount = in.getInt();
+		header.maxLength = in.getInt();
+		header.charCount = in.getLong();
+		header.prefixLength = in.getInt();
+		int minLengthCount = in.getInt();
+		checkRange("editDistanceMax", header.editDistanceMax, Integer.MAX_VALUE);
+		checkRange("wordCount", header.wordCount, Integer.MAX_VALUE - 1);
+		checkRange("size", header.size, Integer.MAX_VALUE);
+		checkRange("tableCapacity", header.tableCapacity, Integer.MAX_VALUE);
+		if (Integer.bitCount(header.tableCapacity) != 1) {
+			throw new IOException("invalid tableCapacity " + header.tableCapacity + " in snapshot");
+		}
+		checkRange("entries", header.entries, Integer.MAX_VALUE - 1);
+		checkRange("postingCount", header.postingCount, Integer.MAX_VALUE);
+		checkRange("maxLength", header.maxLength, Integer.MAX_VALUE);
+		checkRange("charCount", header.charCount, Integer.MAX_VALUE);
+		checkRange("minLengthCount", minLengthCount, header.editDistanceMax);
+		in.align(HEADER_SIZE);
+		header.minLengthsPerDistance = new ArrayList<>(minLengthCount);
+		for (int minLength : in.getInts(minLengthCount)) {
+			header.minLengthsPerDistance.add(minLength);
+		}
+		in.align(8);
+		header.computeLayout();
+		return header;
+	}
+
+	// a corrupt count must not allocate or map anything
+	private static void checkRange(String name, long value, long max) throws IOException {
+		if (value < 0 || value > max) throw new IOException("invalid " + name + " " + value + " in snapshot");
+	}
+
+	static class Header {
+
+		int version;
+		int editDistanceMax;
+		AccuracyLevel accuracyLevel;
+		int wordCount;
+		int size;
+		int tableCapacity;
+		int entries;
+		int postingCount;
+		int maxLength;
+		long charCount;
+		int prefixLength;
+		List<Integer> minLengthsPerDistance;
+
+		// byte positions of the sections
+		long wordOffsetsPosition;
+		long charsPosition;
+		long countsPosition;
+		long keysPosition;
+		long refsPosition;
+		long entryWordNrPosition;
+		long offsetsPosition;
+		long postingsPosition;
+		long length;
+
+		void computeLayout() {
+			wordOffsetsPosition = align(HEADER_SIZE + 4L * minLengthsPerDistance.size());
+			charsPosition = align(wordOffsetsPosition + 4L * (wordCount + 1));
+			countsPosition = align(charsPosition + 2L * charCount);
+			keysPosition = align(countsPosition + 4L * wordCount);
+			refsPosition = keysPosition + 8L * tableCapacity;
+			entryWordNrPosition = align(refsPosition + 4L * tableCapacity);
+			offsetsPosition = align(entryWordNrPosition + 4L * entries);
+			postingsPosition = align(offsetsPosition + 4L * (entries + 1));
+			length = postingsPosition + 4L * postingCount;
+		}
+
+		private static long align(long position) {
+			return (position + 7) & ~7L;
+		}
+
+		/**
+		 * The deletes depend on the edit distance, its minimum lengths and the
+		 * prefix length and the suggestions are pruned for all accuracy levels
+		 * except maximum.
+		 */
+		void verify(PreDictSettings settings) {
+			if (settings.getEditDistanceMax() != editDistanceMax) {
+				throw new IllegalArgumentException("snapshot was built with editDistanceMax=" + editDistanceMax
+						+ " but editDistanceMax=" + settings.getEditDistanceMax() + " is requested");
+			}
+			if (!settings.getMinLengthsPerDistance().equals(minLengthsPerDistance)) {
+				throw new IllegalArgumentException("snapshot was built with minLengthsPerDistance="
+						+ minLengthsPerDistance + " but minLengthsPerDistance="
+						+ settings.getMinLengthsPerDistance() + " is requested");
+			}
+			if (settings.getPrefixLength() != prefixLength) {
+				throw new IllegalArgumentException("snapshot was built with prefixLength=" + prefixLength
+						+ " but prefixLength=" + settings.getPrefixLength() + " is requested");
+			}
+			boolean pruned = accuracyLevel != AccuracyLevel.maximum;
+			if (pruned != (settings.getAccuracyLevel() != AccuracyLevel.maximum)) {
+				throw new IllegalArgumentException("snapshot was built with accuracyLevel=" + accuracyLevel
+						+ " which is incompatible to the requested accuracyLevel=" + settings.getAccuracyLevel());
+			}
+		}
+	}
+
+	private static class Output implements AutoCloseable {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private long written = 0;
+
+		Output(Path path) throws IOException {
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		void putInt(int value) throws IOException {
+			ensure(4);
+			buffer.putInt(value);
+		}
+
+		void putLong(long value) throws IOException {
+			ensure(8);
+			buffer.putLong(value);
+		}
+
+		void putInts(int[] values) throws IOException {
+			for (int off = 0; off < values.length;) {
+				ensure(4);
+				int n = Math.min(values.length - off, buffer.remaining() / 4);
+				buffer.asIntBuffer().put(values, off, n);
+				buffer.position(buffer.position() + n * 4);
+				off += n;
+			}
+		}
+
+		void putLongs(long[] values) throws IOException {
+			for (int off = 0; off < values.length;) {
+				ensure(8);
+				int n = Math.min(values.length - off, buffer.remaining() / 8);
+				buffer.asLongBuffer().put(values, off, n);
+				buffer.position(buffer.position() + n * 8);
+				off += n;
+			}
+		}
+
+		void putChars(String value) throws IOException {
+			for (int i = 0; i < value.length(); i++) {
+				ensure(2);
+				buffer.putChar(value.charAt(i));
+			}
+		}
+
+		void align(int alignment) throws IOException {
+			while ((written + buffer.position()) % alignment != 0) {
+				ensure(1);
+				buffer.put((byte) 0);
+			}
+		}
+
+		private void ensure(int bytes) throws IOException {
+			if (buffer.remaining() < bytes) flush();
+		}
+
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				written += channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				flush();
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	static class Input implements AutoCloseable {
+
+		private final FileChannel channel;
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		private long consumed = 0;
+
+		Input(Path path) throws IOException {
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+			buffer.limit(0);
+		}
+
+		long size() throws IOException {
+			return channel.size();
+		}
+
+		int getInt() throws IOException {
+			require(4);
+			return buffer.getInt();
+		}
+
+		long getLong() throws IOException {
+			require(8);
+			return buffer.getLong();
+		}
+
+		int[] getInts(int length) throws IOException {
+			int[] values = new int[length];
+			for (int off = 0; off < length;) {
+				require(4);
+				int n = Math.min(length - off, buffer.remaining() / 4);
+				buffer.asIntBuffer().get(values, off, n);
+				buffer.position(buffer.position() + n * 4);
+				off += n;
+			}
+			return values;
+		}
+
+		long[] getLongs(int length) throws IOException {
+			long[] values = new long[length];
+			for (int off = 0; off < length;) {
+				require(8);
+				int n = Math.min(length - off, buffer.remaining() / 8);
+				buffer.asLongBuffer().get(values, off, n);
+				buffer.position(buffer.position() + n * 8);
+				off += n;
+			}
+			return values;
+		}
+
+		char[] getChars(int length) throws IOException {
+			char[] values = new char[length];
+			for (int off = 0; off < length;) {
+				require(2);
+				int n = Math.min(length - off, buffer.remaining() / 2);
+				buffer.asCharBuffer().get(values, off, n);
+				buffer.position(buffer.position() + n * 2);
+				off += n;
+			}
+			return values;
+		}
+
+		void align(int alignment) throws IOException {
+			while ((consumed + buffer.position()) % alignment != 0) {
+				require(1);
+				buffer.get();
+			}
+		}
+
+		private void require(int bytes) throws IOException {
+			if (buffer.remaining() >= bytes) return;
+			consumed += buffer.position();
+			buffer.compact();
+			while (buffer.position() < bytes) {
+				if (channel.read(buffer) < 0) throw new EOFException("snapshot is truncated");
+			}
+			buffer.flip();
+		}
+
+		@Override
+		public void close() throws IOException {
+			channel.close();
+		}
+	}
+}
@@ -0,0 +1,785 @@
+package de.cxp.predict.index;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.function.Function;
+
+import de.cxp.predict.api.DictionaryItem;
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+
+/**
+ * Index that can be extended while other threads search it.
+ *
+ * The index consists of immutable parts: the base index it was created from
+ * and segments with the words indexed afterwards, each covering a consecutive
+ * range of word numbers. Changes are made by one writer at a time inside
+ * {@link #update(Runnable)}. They are collected in a {@link HashedIndex} that
+ * becomes a new segment once the update is done and are published as a new
+ * {@link Version} with a single volatile write. Readers never wait and never
+ * see a part of an update. All reads of a lookup should use the same
+ * {@link #readView()}, the read methods of this class itself include the
+ * changes of the running update and are meant for the writer only.
+ *
+ * A key that exists in several parts is read from all of them. Since every
+ * part only keeps the suggestions of the lowest distance if pruned, the
+ * combined suggestions are pruned again, which gives the same suggestions as if
+ * all words were indexed into one index.
+ *
+ * To keep the number of parts low, the newest segment is merged with its
+ * predecessor as long as that one holds no more than MERGE_FACTOR times its
+ * words. Merged segments are rebuilt from their words, the base is never
+ * touched. The counts of published words are changed in copy-on-write pages.
+ *
+ * Removed words get a count of 0 and are skipped on read. Fragments that lose
+ * all of their suggestions of the lowest distance that way get the words of
+ * the next distance as patch. Both is cleaned up by {@link #compact()}, which
+ * rebuilds the whole index into a new base.
+ */
+public class LiveIndex implements DictionaryIndex {
+
+	private static final int MERGE_FACTOR = 4;
+	private static final int PAGE_BITS = 10;
+	private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+	private static final int[] NO_SUGGESTIONS = new int[0];
+
+	private final Function<String, ? extends Collection<String>> fragmentGenerator;
+	private final boolean pruned;
+	private final int prefixLength;
+
+	private volatile Version version;
+
+	// state of the running update, guarded by writeLock
+	private final Object writeLock = new Object();
+	private boolean updating = false;
+	private HashedIndex pending;
+	private final TIntIntHashMap changedCounts = new TIntIntHashMap();
+	// an empty array removes the patch
+	private final TLongObjectHashMap<int[]> changedPatches = new TLongObjectHashMap<>();
+	private final WriteView writeView = new WriteView();
+	private final DictionaryItem scratch = new DictionaryItem();
+
+	/**
+	 * @param base
+	 *        the words indexed so far
+	 * @param fragmentGenerator
+	 *        creates the fragments of a word, used to rebuild segments
+	 * @param pruned
+	 *        if true, only the words with the lowest distance to a fragment
+	 *        are kept as suggestions
+	 * @param prefixLength
+	 *        the length of the word prefixes the fragments are generated from
+	 */
+	public LiveIndex(CompactIndex base, Function<String, ? extends Collection<String>> fragmentGenerator,
+			boolean pruned, int prefixLength) {
+		this.fragmentGenerator = fragmentGenerator;
+		this.pruned = pruned;
+		this.prefixLength = prefixLength;
+		this.version = new Version(0, new Part[] { new Part(base, 0, base.size()) }, new int[0][],
+				new TLongObjectHashMap<>(), base.size(), base.getMaxLength(), false);
+		this.pending = new HashedIndex(pruned, prefixLength);
+	}
+
+	/**
+	 * Runs the changes and publishes them at once afterwards. If the changes
+	 * fail, nothing of them is published. Nested updates are published with
+	 * the outermost one.
+	 */
+	@Override
+	public void update(Runnable changes) {
+		synchronized (writeLock) {
+			if (updating) {
+				changes.run();
+				return;
+			}
+			updating = true;
+			try {
+				changes.run();
+				publish();
+			} finally {
+				updating = false;
+				discardChanges();
+			}
+		}
+	}
+
+	/**
+	 * @return number of the currently published version
+	 */
+	public long getVersion() {
+		return version.number;
+	}
+
+	/**
+	 * @return number of immutable parts the index consists of
+	 */
+	public int getParts() {
+		return version.parts.length;
+	}
+
+	@Override
+	public DictionaryIndex readView() {
+		return version;
+	}
+
+	@Override
+	public int segments() {
+		return pending.segments();
+	}
+
+	@Override
+	public int segmentOf(String fragment) {
+		return pending.segmentOf(fragment);
+	}
+
+	@Override
+	public int addCount(String word, int count) {
+		checkUpdating();
+		int wordNr = writeView.getWordNr(word);
+		if (wordNr < 0 || wordNr >= version.wordCount) return pending.addCount(word, count);
+
+		int previousCount = writeView.getCount(wordNr);
+		changedCounts.put(wordNr, (int) Math.min((long) previousCount + count, Integer.MAX_VALUE));
+		return previousCount;
+	}
+
+	@Override
+	public int addWord(String word) {
+		checkUpdating();
+		int wordNr = writeView.getWordNr(word);
+		return wordNr >= 0 ? wordNr : version.wordCount + pending.addWord(word);
+	}
+
+	// called by several threads of a ParallelIndexer for new words, so it
+	// can't check the lock
+	@Override
+	public void addFragment(String fragment, int wordNr) {
+		int first = version.wordCount;
+		if (wordNr >= first) {
+			pending.addFragment(fragment, wordNr - first);
+			return;
+		}
+		// a published word, that is suggested again after the removal of
+		// other words
+		long hash = FragmentHash.hash(fragment);
+		int[] patch = writeView.patch(hash);
+		if (patch == null) patch = NO_SUGGESTIONS;
+		int i = Arrays.binarySearch(patch, wordNr);
+		if (i >= 0) return;
+		int insertAt = -i - 1;
+		int[] changed = new int[patch.length + 1];
+		System.arraycopy(patch, 0, changed, 0, insertAt);
+		changed[insertAt] = wordNr;
+		System.arraycopy(patch, insertAt, changed, insertAt + 1, patch.length - insertAt);
+		changedPatches.put(hash, changed);
+	}
+
+	@Override
+	public int getWordNr(String word) {
+		return writeView.getWordNr(word);
+	}
+
+	@Override
+	public int removeCount(String word, int count) {
+		checkUpdating();
+		int wordNr = writeView.getWordNr(word);
+		if (wordNr < 0) return 0;
+		if (wordNr >= version.wordCount) return pending.removeCount(word, count);
+
+		int previousCount = writeView.getCount(wordNr);
+		changedCounts.put(wordNr, count < previousCount ? previousCount - count : 0);
+		return previousCount;
+	}
+
+	/**
+	 * Published words are not removed from their parts, but skipped on read
+	 * once their count is 0. So this has to be called after the word was
+	 * removed.
+	 */
+	@Override
+	public boolean removeFragment(String fragment, int wordNr) {
+		checkUpdating();
+		int first = version.wordCount;
+		if (wordNr >= first) pending.removeFragment(fragment, wordNr - first);
+
+		long hash = FragmentHash.hash(fragment);
+		int[] patch = writeView.patch(hash);
+		int i = patch != null ? Arrays.binarySearch(patch, wordNr) : -1;
+		if (i >= 0) {
+			int[] changed = new int[patch.length - 1];
+			System.arraycopy(patch, 0, changed, 0, i);
+			System.arraycopy(patch, i + 1, changed, i, changed.length - i);
+			changedPatches.put(hash, changed);
+		}
+
+		DictionaryItem item = writeView.read(fragment, scratch);
+		if (item == null || item.suggestions.isEmpty()) return true;
+		int distance = Math.min(writeView.getWord(wordNr).length(), prefixLength) - fragment.length();
+		return Math.min(writeView.getWord(item.suggestions.get(0)).length(), prefixLength)
+				- fragment.length() > distance;
+	}
+
+	/**
+	 * Publishes the running update and rebuilds all parts from the remaining
+	 * words into a new base, which also drops the removed words and patches.
+	 * Lookups continue on the previous version in the meantime.
+	 */
+	@Override
+	public void compact() {
+		checkUpdating();
+		publish();
+		discardChanges();
+
+		Version current = version;
+		if (!current.removals) return;
+
+		HashedIndex index = new HashedIndex(pruned, prefixLength);
+		for (int i = 0; i < current.wordCount; i++) {
+			int count = current.getCount(i);
+			if (count == 0) continue;
+			String word = current.getWord(i);
+			index.addCount(word, count);
+			int wordNr = index.addWord(word);
+			for (String fragment : fragmentGenerator.apply(word)) {
+				index.addFragment(fragment, wordNr);
+			}
+		}
+		FrozenIndex base = FrozenIndex.of(index);
+		version = new Version(current.number + 1, new Part[] { new Part(base, 0, base.size()) }, new int[0][],
+				new TLongObjectHashMap<>(), base.size(), base.getMaxLength(), false);
+	}
+
+	private void checkUpdating() {
+		if (!Thread.holdsLock(writeLock)) throw new IllegalStateException("index can only be changed inside update");
+	}
+
+	@Override
+	public DictionaryItem read(String term, DictionaryItem reuse) {
+		return writeView.read(term, reuse);
+	}
+
+	@Override
+	public DictionaryItem read(CharSequence term, long hash, DictionaryItem reuse) {
+		return writeView.read(term, hash, reuse);
+	}
+
+	@Override
+	public String getWord(int wordNr) {
+		return writeView.getWord(wordNr);
+	}
+
+	@Override
+	public int getCount(int wordNr) {
+		return writeView.getCount(wordNr);
+	}
+
+	@Override
+	public int getWordCount() {
+		return writeView.getWordCount();
+	}
+
+	@Override
+	public int size() {
+		return writeView.size();
+	}
+
+	@Override
+	public int getMaxLength() {
+		return writeView.getMaxLength();
+	}
+
+	@Override
+	public void forEachEntry(EntryVisitor visitor) {
+		version.forEachEntry(visitor);
+	}
+
+	private void publish() {
+		if (pending.getWordCount() == 0 && changedCounts.isEmpty() && changedPatches.isEmpty()) return;
+
+		Version current = version;
+		Part[] parts = current.parts;
+		int size = current.size;
+		int maxLength = current.maxLength;
+		if (pending.getWordCount() > 0) {
+			FrozenIndex segment = FrozenIndex.of(pending);
+			int distinctKeys = countNewKeys(segment, parts);
+			parts = Arrays.copyOf(parts, parts.length + 1);
+			parts[parts.length - 1] = new Part(segment, current.wordCount, distinctKeys);
+			size += distinctKeys;
+			maxLength = Math.max(maxLength, segment.getMaxLength());
+		}
+
+		TLongObjectHashMap<int[]> patches = current.patches;
+		if (!changedPatches.isEmpty()) {
+			patches = new TLongObjectHashMap<>(current.patches);
+			for (TLongObjectIterator<int[]> it = changedPatches.iterator(); it.hasNext();) {
+				it.advance();
+				if (it.value().length == 0) {
+					patches.remove(it.key());
+				} else {
+					patches.put(it.key(), it.value());
+				}
+			}
+		}
+		boolean removals = current.removals || !patches.isEmpty() || changedCounts.containsValue(0);
+
+		Version next = new Version(current.number + 1, parts, changeCounts(current.countPages), patches, size,
+				maxLength, removals);
+		version = mergeSegments(next);
+	}
+
+	private void discardChanges() {
+		if (pending.size() > 0) pending = new HashedIndex(pruned, prefixLength);
+		changedCounts.clear();
+		changedPatches.clear();
+	}
+
+	private static int countNewKeys(CompactIndex segment, Part[] olderParts) {
+		int[] newKeys = new int[1];
+		segment.forEachEntry((hash, wordNr, suggestions, length) -> {
+			for (Part part : olderParts) {
+				if (((CompactIndex) part.index).containsHash(hash)) return;
+			}
+			newKeys[0]++;
+		});
+		return newKeys[0];
+	}
+
+	private int[][] changeCounts(int[][] countPages) {
+		if (changedCounts.isEmpty()) return countPages;
+
+		int[][] pages = countPages.clone();
+		boolean[] copied = new boolean[0];
+		for (TIntIntIterator it = changedCounts.iterator(); it.hasNext();) {
+			it.advance();
+			int page = it.key() >>> PAGE_BITS;
+			if (page >= pages.length) pages = Arrays.copyOf(pages, page + 1);
+			if (page >= copied.length) copied = Arrays.copyOf(copied, pages.length);
+			if (!copied[page]) {
+				if (pages[page] == null) {
+					// -1 means the count of the part is still valid
+					pages[page] = new int[1 << PAGE_BITS];
+					Arrays.fill(pages[page], -1);
+				} else {
+					pages[page] = pages[page].clone();
+				}
+				copied[page] = true;
+			}
+			pages[page][it.key() & PAGE_MASK] = it.value();
+		}
+		return pages;
+	}
+
+	private Version mergeSegments(Version version) {
+		Part[] parts = version.parts;
+		int n = parts.length;
+		// the base at index 0 is never merged
+		while (n > 2 && parts[n - 2].index.getWordCount() <= MERGE_FACTOR * parts[n - 1].index.getWordCount()) {
+			Part merged = rebuild(parts[n - 2], parts[n - 1], version);
+			parts = Arrays.copyOf(parts, n - 1);
+			parts[n - 2] = merged;
+			n--;
+		}
+		if (parts == version.parts) return version;
+		return new Version(version.number, parts, version.countPages, version.patches, version.size,
+				version.maxLength, version.removals);
+	}
+
+	private Part rebuild(Part older, Part newer, Version version) {
+		HashedIndex index = new HashedIndex(pruned, prefixLength);
+		for (Part part : new Part[] { older, newer }) {
+			for (int i = 0; i < part.index.getWordCount(); i++) {
+				String word = part.index.getWord(i);
+				int count = version.getCount(part.firstWordNr + i);
+				if (count == 0) {
+					// removed words keep their number
+					index.addCount(word, 1);
+					index.addWord(word);
+					index.removeCount(word, 1);
+					continue;
+				}
+				index.addCount(word, count);
+				int wordNr = index.addWord(word);
+				for (String fragment : fragmentGenerator.apply(word)) {
+					index.addFragment(fragment, wordNr);
+				}
+			}
+		}
+		return new Part(FrozenIndex.of(index), older.firstWordNr, older.distinctKeys + newer.distinctKeys);
+	}
+
+	/**
+	 * A part of the index. Its word numbers are local and start at 0,
+	 * globally they start at firstWordNr. Published parts are always
+	 * {@link CompactIndex}es, the changes of the running update are a
+	 * {@link HashedIndex}.
+	 */
+	private static class Part {
+
+		final DictionaryIndex index;
+		final int firstWordNr;
+		// number of keys that don't exist in older parts
+		final int distinctKeys;
+
+		Part(DictionaryIndex index, int firstWordNr, int distinctKeys) {
+			this.index = index;
+			this.firstWordNr = firstWordNr;
+			this.distinctKeys = distinctKeys;
+		}
+
+		int collect(CharSequence term, long hash, TIntList suggestions) {
+			return index instanceof CompactIndex
+					? ((CompactIndex) index).collect(term, hash, firstWordNr, suggestions)
+					: ((HashedIndex) index).collect(term, hash, firstWordNr, suggestions);
+		}
+	}
+
+	/**
+	 * Read access to the parts, removed words and patches of a state of the
+	 * index.
+	 */
+	private abstract class View implements DictionaryIndex {
+
+		abstract Part[] parts();
+
+		/**
+		 * @return the sorted patch of the key with that hash, or null
+		 */
+		abstract int[] patch(long hash);
+
+		/**
+		 * @return false if no word was removed, so no suggestion has to be
+		 *         checked
+		 */
+		abstract boolean hasRemovals();
+
+		@Override
+		public int addCount(String word, int count) {
+			throw new UnsupportedOperationException("index version is read-only");
+		}
+
+		@Override
+		public int addWord(String word) {
+			throw new UnsupportedOperationException("index version is read-only");
+		}
+
+		@Override
+		public void addFragment(String fragment, int wordNr) {
+			throw new UnsupportedOperationException("index version is read-only");
+		}
+
+		@Override
+		public int removeCount(String word, int count) {
+			throw new UnsupportedOperationException("index version is read-only");
+		}
+
+		@Override
+		public boolean removeFragment(String fragment, int wordNr) {
+			throw new UnsupportedOperationException("index version is read-only");
+		}
+
+		@Override
+		public void compact() {
+			throw new UnsupportedOperationException("index version is read-only");
+		}
+
+		@Override
+		public DictionaryIndex readView() {
+			return this;
+		}
+
+		@Override
+		public DictionaryItem read(String term, DictionaryItem reuse) {
+			return read(term, FragmentHash.hash(term), reuse);
+		}
+
+		@Override
+		public DictionaryItem read(CharSequence term, long hash, DictionaryItem reuse) {
+			TIntList suggestions = reuse.suggestions;
+			suggestions.clear();
+			int wordNr = -1;
+			int hits = 0;
+			for (Part part : parts()) {
+				int found = part.collect(term, hash, suggestions);
+				if (found == CompactIndex.ABSENT) continue;
+				hits++;
+				if (found >= 0) wordNr = part.firstWordNr + found;
+			}
+
+			if (hasRemovals()) {
+				int[] patch = patch(hash);
+				if (patch != null && patch.length > 0 && FragmentHash.isFragmentOf(term, getWord(patch[0]))) {
+					suggestions.add(patch);
+					hits++;
+				}
+				if (hits == 0) return null;
+				suggestions.sort();
+				removeDuplicatesAndRemoved(suggestions);
+				prune(suggestions);
+				if (wordNr >= 0 && getCount(wordNr) == 0) wordNr = getWordNr(term.toString());
+				if (wordNr < 0 && suggestions.isEmpty()) return null;
+			} else {
+				if (hits == 0) return null;
+				if (hits > 1) prune(suggestions);
+			}
+			reuse.count = wordNr >= 0 ? getCount(wordNr) : 0;
+			reuse.wordNr = wordNr;
+			return reuse;
+		}
+
+		// expects sorted suggestions
+		void removeDuplicatesAndRemoved(TIntList suggestions) {
+			int n = 0;
+			for (int i = 0; i < suggestions.size(); i++) {
+				int suggestion = suggestions.get(i);
+				boolean duplicate = n > 0 && suggestions.get(n - 1) == suggestion;
+				if (!duplicate && getCount(suggestion) > 0) suggestions.set(n++, suggestion);
+			}
+			suggestions.remove(n, suggestions.size() - n);
+		}
+
+		// keeps the suggestions with the lowest distance, like the pruned
+		// indexes do
+		void prune(TIntList suggestions) {
+			if (!pruned || suggestions.size() < 2) return;
+			int minLength = Integer.MAX_VALUE;
+			for (int i = 0; i < suggestions.size(); i++) {
+				minLength = Math.min(minLength, Math.min(getWord(suggestions.get(i)).length(), prefixLength));
+			}
+			int n = 0;
+			for (int i = 0; i < suggestions.size(); i++) {
+				int wordNr = suggestions.get(i);
+				if (Math.min(getWord(wordNr).length(), prefixLength) == minLength) suggestions.set(n++, wordNr);
+			}
+			suggestions.remove(n, suggestions.size() - n);
+		}
+
+		@Override
+		public int getWordNr(String word) {
+			Part[] parts = parts();
+			// a removed word may be indexed again in a newer part
+			for (int i = parts.length - 1; i >= 0; i--) {
+				int wordNr = parts[i].index.getWordNr(word);
+				if (wordNr >= 0 && getCount(parts[i].firstWordNr + wordNr) > 0) return parts[i].firstWordNr + wordNr;
+			}
+			return -1;
+		}
+
+		Part partOf(int wordNr) {
+			Part[] parts = parts();
+			int i = parts.length - 1;
+			while (parts[i].firstWordNr > wordNr) {
+				i--;
+			}
+			return parts[i];
+		}
+
+		@Override
+		public String getWord(int wordNr) {
+			Part part = partOf(wordNr);
+			return part.index.getWord(wordNr - part.firstWordNr);
+		}
+	}
+
+	/**
+	 * Published state of the index, that never changes.
+	 */
+	private class Version extends View {
+
+		final long number;
+		final Part[] parts;
+		// changed counts of published words, null pages and -1 values mean
+		// unchanged
+		final int[][] countPages;
+		final TLongObjectHashMap<int[]> patches;
+		final boolean removals;
+		final int wordCount;
+		// keys of removed words are still counted until compaction
+		final int size;
+		final int maxLength;
+
+		Version(long number, Part[] parts, int[][] countPages, TLongObjectHashMap<int[]> patches, int size,
+				int maxLength, boolean removals) {
+			this.number = number;
+			this.parts = parts;
+			this.countPages = countPages;
+			this.patches = patches;
+			this.removals = removals;
+			Part last = parts[parts.length - 1];
+			this.wordCount = last.firstWordNr + last.index.getWordCount();
+			this.size = size;
+			this.maxLength = maxLength;
+		}
+
+		@Override
+		Part[] parts() {
+			return parts;
+		}
+
+		@Override
+		int[] patch(long hash) {
+			return patches.isEmpty() ? null : patches.get(hash);
+		}
+
+		@Override
+		boolean hasRemovals() {
+			return removals;
+		}
+
+		@Override
+		public int getCount(int wordNr) {
+			int page = wordNr >>> PAGE_BITS;
+			if (page < countPages.length && countPages[page] != null) {
+				int count = countPages[page][wordNr & PAGE_MASK];
+				if (count >= 0) return count;
+			}
+			Part part = partOf(wordNr);
+			return part.index.getCount(wordNr - part.firstWordNr);
+		}
+
+		@Override
+		public int getWordCount() {
+			return wordCount;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public int getMaxLength() {
+			return maxLength;
+		}
+
+		@Override
+		public void forEachEntry(EntryVisitor visitor) {
+			if (parts.length == 1 && !removals) {
+				parts[0].index.forEachEntry(visitor);
+				return;
+			}
+
+			// entries of the segments and patches by hash, so they can be
+			// combined with the entries of the base
+			TLongObjectHashMap<MergedEntry> merged = new TLongObjectHashMap<>();
+			for (int p = 1; p < parts.length; p++) {
+				Part part = parts[p];
+				part.index.forEachEntry((hash, wordNr, suggestions, length) -> {
+					MergedEntry entry = merged.get(hash);
+					if (entry == null) merged.put(hash, entry = new MergedEntry());
+					if (wordNr >= 0) entry.wordNrs.add(part.firstWordNr + wordNr);
+					for (int i = 0; i < length; i++) {
+						entry.suggestions.add(part.firstWordNr + suggestions[i]);
+					}
+				});
+			}
+			patches.forEachEntry((hash, patch) -> {
+				MergedEntry entry = merged.get(hash);
+				if (entry == null) merged.put(hash, entry = new MergedEntry());
+				entry.suggestions.add(patch);
+				return true;
+			});
+
+			parts[0].index.forEachEntry((hash, wordNr, suggestions, length) -> {
+				MergedEntry entry = merged.remove(hash);
+				if (entry == null && !removals) {
+					visitor.visit(hash, wordNr, suggestions, length);
+					return;
+				}
+				if (entry == null) entry = new MergedEntry();
+				if (wordNr >= 0) entry.wordNrs.add(wordNr);
+				entry.suggestions.insert(0, suggestions, 0, length);
+				visit(visitor, hash, entry);
+			});
+			merged.forEachEntry((hash, entry) -> {
+				visit(visitor, hash, entry);
+				return true;
+			});
+		}
+
+		private void visit(EntryVisitor visitor, long hash, MergedEntry entry) {
+			TIntList suggestions = entry.suggestions;
+			suggestions.sort();
+			removeDuplicatesAndRemoved(suggestions);
+			prune(suggestions);
+
+			int wordNr = -1;
+			for (int i = 0; i < entry.wordNrs.size(); i++) {
+				if (getCount(entry.wordNrs.get(i)) > 0) wordNr = entry.wordNrs.get(i);
+			}
+			if (wordNr >= 0 || !suggestions.isEmpty()) {
+				visitor.visit(hash, wordNr, suggestions.toArray(), suggestions.size());
+			}
+		}
+	}
+
+	/**
+	 * The published version together with the changes of the running update.
+	 */
+	private class WriteView extends View {
+
+		private Version partsVersion;
+		private HashedIndex partsPending;
+		private Part[] parts;
+
+		@Override
+		Part[] parts() {
+			Version current = version;
+			if (partsVersion != current || partsPending != pending) {
+				parts = Arrays.copyOf(current.parts, current.parts.length + 1);
+				parts[parts.length - 1] = new Part(pending, current.wordCount, 0);
+				partsVersion = current;
+				partsPending = pending;
+			}
+			return parts;
+		}
+
+		@Override
+		int[] patch(long hash) {
+			int[] patch = changedPatches.get(hash);
+			return patch != null ? patch : version.patch(hash);
+		}
+
+		@Override
+		boolean hasRemovals() {
+			return true;
+		}
+
+		@Override
+		public int getCount(int wordNr) {
+			Version current = version;
+			if (wordNr >= current.wordCount) return pending.getCount(wordNr - current.wordCount);
+			return changedCounts.containsKey(wordNr) ? changedCounts.get(wordNr) : current.getCount(wordNr);
+		}
+
+		@Override
+		public int getWordCount() {
+			return version.wordCount + pending.getWordCount();
+		}
+
+		@Override
+		public int size() {
+			return version.size + pending.size();
+		}
+
+		@Override
+		public int getMaxLength() {
+			return Math.max(version.maxLength, pending.getMaxLength());
+		}
+
+		@Override
+		public void forEachEntry(EntryVisitor visitor) {
+			throw new UnsupportedOperationException("only published versions can be iterated");
+		}
+	}
+
+	private static class MergedEntry {
+
+		final TIntArrayList wordNrs = new TIntArrayList(1);
+		final TIntArrayList suggestions = new TIntArrayList();
+	}
+}
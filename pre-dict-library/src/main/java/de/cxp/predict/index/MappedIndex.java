@@ -0,0 +1,170 @@
+package de.cxp.predict.index;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import de.cxp.predict.api.PreDictSettings;
+import de.cxp.predict.index.IndexSnapshot.Header;
+import de.cxp.predict.index.IndexSnapshot.Input;
+
+/**
+ * Serves lookups directly from a memory mapped {@link IndexSnapshot} file.
+ *
+ * Nothing but the header is read on startup and the data lives outside of the
+ * java heap. The file is mapped read-only, so several JVMs that map the same
+ * file share the pages of the OS page cache.
+ *
+ * Words are decoded from the mapped chars only when they are requested;
+ * verifying a key against a word compares the chars in place.
+ */
+public class MappedIndex extends CompactIndex {
+
+	// a single buffer can't be larger than 2GB, so the file is mapped in
+	// chunks. Since every section is aligned to 8 bytes, no value crosses a
+	// chunk border.
+	private static final int CHUNK_BITS = 30;
+	private static final long CHUNK_MASK = (1L << CHUNK_BITS) - 1;
+
+	private final MappedByteBuffer[] chunks;
+	private final Header header;
+	private final int tableCapacity;
+
+	private MappedIndex(MappedByteBuffer[] chunks, Header header) {
+		super(header.size, header.maxLength);
+		this.chunks = chunks;
+		this.header = header;
+		this.tableCapacity = header.tableCapacity;
+	}
+
+	/**
+	 * Maps the given snapshot file, if it was built with settings that are
+	 * compatible to the given ones.
+	 *
+	 * @param path
+	 * @param settings
+	 * @return the index
+	 * @throws IOException
+	 *         if the file can't be read or is no snapshot of this version
+	 * @throws IllegalArgumentException
+	 *         if the snapshot was built with incompatible settings
+	 */
+	public static MappedIndex open(Path path, PreDictSettings settings) throws IOException {
+		Header header;
+		try (Input in = new Input(path)) {
+			header = IndexSnapshot.readHeader(in);
+		}
+		header.verify(settings);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < header.length) throw new IOException("snapshot is truncated");
+			MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((header.length - 1) >>> CHUNK_BITS) + 1];
+			for (int i = 0; i < chunks.length; i++) {
+				long position = (long) i << CHUNK_BITS;
+				long size = Math.min(CHUNK_MASK + 1, header.length - position);
+				chunks[i] = channel.map(MapMode.READ_ONLY, position, size);
+				chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+			}
+			// the mapping stays valid after the channel is closed
+			return new MappedIndex(chunks, header);
+		}
+	}
+
+	private int getInt(long position) {
+		return chunks[(int) (position >>> CHUNK_BITS)].getInt((int) (position & CHUNK_MASK));
+	}
+
+	private long getLong(long position) {
+		return chunks[(int) (position >>> CHUNK_BITS)].getLong((int) (position & CHUNK_MASK));
+	}
+
+	private char getChar(long position) {
+		return chunks[(int) (position >>> CHUNK_BITS)].getChar((int) (position & CHUNK_MASK));
+	}
+
+	@Override
+	protected int tableCapacity() {
+		return tableCapacity;
+	}
+
+	@Override
+	protected long key(int slot) {
+		return getLong(header.keysPosition + 8L * slot);
+	}
+
+	@Override
+	protected int ref(int slot) {
+		return getInt(header.refsPosition + 4L * slot);
+	}
+
+	@Override
+	protected int entryWordNr(int entry) {
+		return getInt(header.entryWordNrPosition + 4L * entry);
+	}
+
+	@Override
+	protected int offset(int entry) {
+		return getInt(header.offsetsPosition + 4L * entry);
+	}
+
+	@Override
+	protected int posting(int index) {
+		return getInt(header.postingsPosition + 4L * index);
+	}
+
+	private int wordStart(int wordNr) {
+		return getInt(header.wordOffsetsPosition + 4L * wordNr);
+	}
+
+	@Override
+	protected boolean isWord(CharSequence term, int wordNr) {
+		int start = wordStart(wordNr);
+		int length = wordStart(wordNr + 1) - start;
+		if (length != term.length()) return false;
+		long position = header.charsPosition + 2L * start;
+		for (int i = 0; i < length; i++) {
+			if (getChar(position + 2L * i) != term.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	@Override
+	protected boolean isFragmentOf(CharSequence term, int wordNr) {
+		int start = wordStart(wordNr);
+		int length = wordStart(wordNr + 1) - start;
+		int n = term.length();
+		if (n >= length) return false;
+		long position = header.charsPosition + 2L * start;
+		int i = 0;
+		for (int j = 0; i < n && j < length; j++) {
+			if (term.charAt(i) == getChar(position + 2L * j)) i++;
+		}
+		return i == n;
+	}
+
+	@Override
+	public String getWord(int wordNr) {
+		int start = wordStart(wordNr);
+		char[] chars = new char[wordStart(wordNr + 1) - start];
+		long position = header.charsPosition + 2L * start;
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = getChar(position + 2L * i);
+		}
+		return new String(chars);
+	}
+
+	@Override
+	public int getCount(int wordNr) {
+		return getInt(header.countsPosition + 4L * wordNr);
+	}
+
+	@Override
+	public int getWordCount() {
+		return header.wordCount;
+	}
+
+}
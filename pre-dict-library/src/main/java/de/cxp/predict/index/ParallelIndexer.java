@@ -0,0 +1,147 @@
+package de.cxp.predict.index;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * Adds the fragments of many words to an index using several threads.
+ *
+ * The words are collected in batches. The fragments of a batch are created in
+ * parallel chunks of words and partitioned by the segment of the index they
+ * belong to (see {@link DictionaryIndex#segments()}). Then each segment is
+ * filled by one thread with its part of all chunks in chunk order, so every
+ * fragment receives its words in the same order as if the words were indexed
+ * one after another. The pruning of the index is applied as usual, hence the
+ * result does not depend on the number of threads.
+ */
+public class ParallelIndexer implements AutoCloseable {
+
+	// small batches keep the queued fragments in the young generation. The
+	// size must not depend on the number of threads, otherwise the layout of
+	// the index would.
+	private static final int BATCH_SIZE = 1 << 12;
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final DictionaryIndex index;
+	private final Function<String, ? extends Collection<String>> fragmentGenerator;
+	private final ForkJoinPool pool;
+	private final int chunks;
+
+	private final List<String> words = new ArrayList<>(BATCH_SIZE);
+	private final TIntArrayList wordNrs = new TIntArrayList(BATCH_SIZE);
+
+	/**
+	 * @param index
+	 *        the index the fragments are added to
+	 * @param fragmentGenerator
+	 *        creates the fragments of a word, must be thread safe
+	 * @param threads
+	 *        number of threads
+	 */
+	public ParallelIndexer(DictionaryIndex index, Function<String, ? extends Collection<String>> fragmentGenerator,
+			int threads) {
+		if (threads < 1) throw new IllegalArgumentException("threads must be at least 1");
+		this.index = index;
+		this.fragmentGenerator = fragmentGenerator;
+		this.pool = new ForkJoinPool(threads);
+		this.chunks = threads * CHUNKS_PER_THREAD;
+	}
+
+	/**
+	 * Queues the fragments of that word. Must be called in ascending word
+	 * number order, after the word was added to the index. Once the batch is
+	 * full, its fragments are added to the index before this method returns.
+	 *
+	 * @param word
+	 * @param wordNr
+	 */
+	public void add(String word, int wordNr) {
+		words.add(word);
+		wordNrs.add(wordNr);
+		if (words.size() == BATCH_SIZE) flush();
+	}
+
+	/**
+	 * Adds the fragments of all queued words to the index.
+	 */
+	public void flush() {
+		if (words.isEmpty()) return;
+		pool.invoke(ForkJoinTask.adapt(this::indexBatch));
+		words.clear();
+		wordNrs.clear();
+	}
+
+	@Override
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	private void indexBatch() {
+		List<ForkJoinTask<Chunk>> chunkTasks = new ArrayList<>(chunks);
+		int chunkSize = (words.size() + chunks - 1) / chunks;
+		for (int start = 0; start < words.size(); start += chunkSize) {
+			int from = start;
+			int end = Math.min(start + chunkSize, words.size());
+			chunkTasks.add(ForkJoinTask.adapt(() -> createFragments(from, end)));
+		}
+		ForkJoinTask.invokeAll(chunkTasks);
+
+		List<ForkJoinTask<?>> segmentTasks = new ArrayList<>(index.segments());
+		for (int segment = 0; segment < index.segments(); segment++) {
+			int s = segment;
+			segmentTasks.add(ForkJoinTask.adapt(() -> {
+				for (ForkJoinTask<Chunk> chunkTask : chunkTasks) {
+					chunkTask.join().addTo(index, s);
+				}
+			}));
+		}
+		ForkJoinTask.invokeAll(segmentTasks);
+	}
+
+	private Chunk createFragments(int from, int end) {
+		Chunk chunk = new Chunk(index.segments());
+		for (int i = from; i < end; i++) {
+			int wordNr = wordNrs.get(i);
+			for (String fragment : fragmentGenerator.apply(words.get(i))) {
+				int segment = index.segmentOf(fragment);
+				chunk.fragments[segment].add(fragment);
+				chunk.wordNrs[segment].add(wordNr);
+			}
+		}
+		return chunk;
+	}
+
+	/**
+	 * The fragments and word numbers of a chunk of words, partitioned by
+	 * segment.
+	 */
+	private static class Chunk {
+
+		final List<String>[] fragments;
+		final TIntArrayList[] wordNrs;
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		Chunk(int segments) {
+			fragments = new List[segments];
+			wordNrs = new TIntArrayList[segments];
+			for (int i = 0; i < segments; i++) {
+				fragments[i] = new ArrayList<>();
+				wordNrs[i] = new TIntArrayList();
+			}
+		}
+
+		void addTo(DictionaryIndex index, int segment) {
+			List<String> segmentFragments = fragments[segment];
+			TIntArrayList segmentWordNrs = wordNrs[segment];
+			for (int i = 0; i < segmentFragments.size(); i++) {
+				index.addFragment(segmentFragments.get(i), segmentWordNrs.get(i));
+			}
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package de.cxp.predict.index;
+
+import gnu.trove.map.hash.TLongIntHashMap;
+
+/**
+ * Counts of the words that did not occur often enough yet to become a
+ * suggestion. Raw query logs contain mostly such words (typos that occur
+ * once), so only the 64 bit hash of a word (see {@link FragmentHash}) is kept
+ * together with its count. Two rare words with the same hash share their
+ * count, which is negligible at that hash size.
+ */
+public class RareWordCounts {
+
+	private final TLongIntHashMap counts = new TLongIntHashMap();
+
+	/**
+	 * Adds to the count of the word, capped at Integer.MAX_VALUE.
+	 *
+	 * @param word
+	 * @param count
+	 *        positive count to add
+	 * @return the new count of the word
+	 */
+	public int add(String word, int count) {
+		long hash = FragmentHash.hash(word);
+		int total = (int) Math.min((long) counts.get(hash) + count, Integer.MAX_VALUE);
+		counts.put(hash, total);
+		return total;
+	}
+
+	/**
+	 * Sets the count of the word, a count of 0 removes it.
+	 *
+	 * @param word
+	 * @param count
+	 */
+	public void set(String word, int count) {
+		long hash = FragmentHash.hash(word);
+		if (count > 0) {
+			counts.put(hash, count);
+		} else {
+			counts.remove(hash);
+		}
+	}
+
+	/**
+	 * @param word
+	 * @return the count of the word, 0 if it's unknown
+	 */
+	public int get(String word) {
+		return counts.get(FragmentHash.hash(word));
+	}
+
+	/**
+	 * @return number of counted words
+	 */
+	public int size() {
+		return counts.size();
+	}
+}
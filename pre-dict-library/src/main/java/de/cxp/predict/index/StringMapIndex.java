@@ -0,0 +1,287 @@
+package de.cxp.predict.index;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map.Entry;
+
+import de.cxp.predict.api.DictionaryItem;
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+
+/**
+ * The original SymSpell dictionary, that holds every word and fragment as
+ * String key.
+ */
+public class StringMapIndex implements DictionaryIndex {
+
+	// Dictionary that contains both the original words and the deletes derived
+	// from them. A term might be both word and delete from another word at the
+	// same time.
+	// For space reduction a item might be either of type DictionaryItem or int.
+	// A DictionaryItem is used for word, word/delete, and delete with multiple
+	// suggestions. Int is used for deletes with a single suggestion (the
+	// majority of entries).
+	private final HashMap<String, Object> dictionary = new HashMap<String, Object>();
+
+	// List of unique words. By using the suggestions (int) as index for this
+	// list they are translated into the original String.
+	private final List<String> wordlist = new ArrayList<String>();
+
+	// removed words keep their number until the index is compacted
+	private final BitSet removedWords = new BitSet();
+
+	private final boolean pruned;
+	private final int prefixLength;
+
+	private int maxlength = 0; // maximum dictionary term length
+
+	/**
+	 * @param pruned
+	 *        if true, only the words with the lowest distance to a fragment
+	 *        are kept as suggestions
+	 * @param prefixLength
+	 *        the length of the word prefixes the fragments are generated from
+	 */
+	public StringMapIndex(boolean pruned, int prefixLength) {
+		this.pruned = pruned;
+		this.prefixLength = prefixLength;
+	}
+
+	@Override
+	public int addCount(String word, int count) {
+		DictionaryItem value;
+		int previousCount = 0;
+		Object dictionaryEntry = dictionary.get(word);
+
+		// known word or fragment
+		if (dictionaryEntry != null) {
+			value = asDictionaryItem(dictionaryEntry);
+
+			// replace integer entry with DictionaryItem object
+			if (dictionaryEntry instanceof Integer) {
+				dictionary.put(word, value);
+			}
+
+			previousCount = value.count;
+			// prevent overflow
+			value.count = (int) Math.min((long) previousCount + count, Integer.MAX_VALUE);
+		}
+		// this is a new word
+		else if (wordlist.size() < Integer.MAX_VALUE) {
+			value = new DictionaryItem();
+			value.count = count;
+			dictionary.put(word, value);
+		} else {
+			throw new IllegalStateException("can not index word since wordlist reached limit of Integer.MAX_VALUE");
+		}
+		return previousCount;
+	}
+
+	@Override
+	public int addWord(String word) {
+		((DictionaryItem) dictionary.get(word)).wordNr = wordlist.size();
+		wordlist.add(word);
+		if (word.length() > maxlength) maxlength = word.length();
+		return wordlist.size() - 1;
+	}
+
+	@Override
+	public void addFragment(String fragment, int wordNr) {
+		Object dictionaryEntry = dictionary.get(fragment);
+		if (dictionaryEntry != null) {
+			// scenario where this entry already exists:
+			// 1. word == deletes(anotherWord)
+			// 2. deletes(word) == deletes(anotherWord)
+			if (dictionaryEntry instanceof Integer) {
+				DictionaryItem dictItem = asDictionaryItem(dictionaryEntry);
+				dictionary.put(fragment, dictItem);
+				if (wordNr != (int) dictionaryEntry)
+					addLowestDistance(dictItem, wordlist.get(wordNr), wordNr, fragment);
+			} else if (!((DictionaryItem) dictionaryEntry).suggestions.contains(wordNr))
+				addLowestDistance((DictionaryItem) dictionaryEntry, wordlist.get(wordNr), wordNr, fragment);
+		} else {
+			dictionary.put(fragment, wordNr);
+		}
+	}
+
+	@Override
+	public int getWordNr(String word) {
+		Object dictionaryEntry = dictionary.get(word);
+		if (!(dictionaryEntry instanceof DictionaryItem) || ((DictionaryItem) dictionaryEntry).count == 0) return -1;
+		return ((DictionaryItem) dictionaryEntry).wordNr;
+	}
+
+	@Override
+	public int removeCount(String word, int count) {
+		int wordNr = getWordNr(word);
+		if (wordNr < 0) return 0;
+
+		DictionaryItem item = (DictionaryItem) dictionary.get(word);
+		int previousCount = item.count;
+		if (count < previousCount) {
+			item.count = previousCount - count;
+			return previousCount;
+		}
+		// the key stays as long as it's a fragment of other words
+		item.count = 0;
+		item.wordNr = -1;
+		if (item.suggestions.isEmpty()) dictionary.remove(word);
+		removedWords.set(wordNr);
+		return previousCount;
+	}
+
+	@Override
+	public boolean removeFragment(String fragment, int wordNr) {
+		Object dictionaryEntry = dictionary.get(fragment);
+		if (dictionaryEntry instanceof Integer) {
+			if ((int) dictionaryEntry != wordNr) return false;
+			dictionary.remove(fragment);
+			return true;
+		}
+		DictionaryItem item = (DictionaryItem) dictionaryEntry;
+		if (item == null || !item.suggestions.remove(wordNr)) return false;
+		if (!item.suggestions.isEmpty()) return false;
+		if (item.count == 0) dictionary.remove(fragment);
+		return true;
+	}
+
+	@Override
+	public void compact() {
+		if (removedWords.isEmpty()) return;
+
+		int[] mapping = new int[wordlist.size()];
+		List<String> words = new ArrayList<>(wordlist.size() - removedWords.cardinality());
+		for (int wordNr = 0; wordNr < wordlist.size(); wordNr++) {
+			if (removedWords.get(wordNr)) {
+				mapping[wordNr] = -1;
+			} else {
+				mapping[wordNr] = words.size();
+				words.add(wordlist.get(wordNr));
+			}
+		}
+
+		for (Iterator<Entry<String, Object>> it = dictionary.entrySet().iterator(); it.hasNext();) {
+			Entry<String, Object> entry = it.next();
+			if (entry.getValue() instanceof Integer) {
+				int wordNr = mapping[(int) entry.getValue()];
+				if (wordNr < 0) {
+					it.remove();
+				} else {
+					entry.setValue(wordNr);
+				}
+			} else {
+				DictionaryItem item = (DictionaryItem) entry.getValue();
+				TIntList suggestions = new TIntArrayList(item.suggestions.size());
+				for (int i = 0; i < item.suggestions.size(); i++) {
+					int wordNr = mapping[item.suggestions.get(i)];
+					if (wordNr >= 0) suggestions.add(wordNr);
+				}
+				item.suggestions = suggestions;
+				if (item.wordNr >= 0) item.wordNr = mapping[item.wordNr];
+			}
+		}
+
+		wordlist.clear();
+		wordlist.addAll(words);
+		removedWords.clear();
+		maxlength = 0;
+		for (String word : wordlist) {
+			if (word.length() > maxlength) maxlength = word.length();
+		}
+	}
+
+	private DictionaryItem asDictionaryItem(Object entry) {
+		if (entry instanceof DictionaryItem) {
+			return (DictionaryItem) entry;
+		} else if (entry instanceof Integer) {
+			// if value is an integer, word is also a fragment from another word
+			// => append fragment to suggestions
+			DictionaryItem dictItem = new DictionaryItem();
+			dictItem.suggestions.add((int) entry);
+			return dictItem;
+		} else {
+			throw new IllegalStateException("unknown entry type found: " + entry.getClass().getSimpleName());
+		}
+	}
+
+	// save some time and space
+	private void addLowestDistance(DictionaryItem item, String word, int wordNr, String fragment) {
+		int indexedDistance = item.suggestions.size() > 0
+				? Math.min(wordlist.get(item.suggestions.get(0)).length(), prefixLength) - fragment.length()
+				: -1;
+		int fragmentDistance = Math.min(word.length(), prefixLength) - fragment.length();
+
+		// remove all existing suggestions (of higher distance) if this word has
+		// a lower distance (only at recallLevel < 2)
+		if (pruned && (indexedDistance > fragmentDistance)) {
+			item.suggestions.clear();
+		}
+
+		// if recall level is 2, add this word anyways
+		// otherwise only add it if it has a similar or lower distance
+		// then the indexed words
+		if (!pruned
+				|| (item.suggestions.size() == 0)
+				|| (indexedDistance >= fragmentDistance)) {
+			item.suggestions.add(wordNr);
+		}
+	}
+
+	@Override
+	public DictionaryItem read(String term, DictionaryItem reuse) {
+		Object dictionaryEntry = dictionary.get(term);
+		if (dictionaryEntry instanceof Integer) {
+			reuse.count = 0;
+			reuse.wordNr = -1;
+			reuse.suggestions.clear();
+			reuse.suggestions.add((int) dictionaryEntry);
+			return reuse;
+		}
+		return (DictionaryItem) dictionaryEntry;
+	}
+
+	@Override
+	public String getWord(int wordNr) {
+		return wordlist.get(wordNr);
+	}
+
+	@Override
+	public int getCount(int wordNr) {
+		if (removedWords.get(wordNr)) return 0;
+		return ((DictionaryItem) dictionary.get(wordlist.get(wordNr))).count;
+	}
+
+	@Override
+	public int getWordCount() {
+		return wordlist.size();
+	}
+
+	@Override
+	public int size() {
+		return dictionary.size();
+	}
+
+	@Override
+	public int getMaxLength() {
+		return maxlength;
+	}
+
+	@Override
+	public void forEachEntry(EntryVisitor visitor) {
+		int[] single = new int[1];
+		for (Entry<String, Object> entry : dictionary.entrySet()) {
+			long hash = FragmentHash.hash(entry.getKey());
+			if (entry.getValue() instanceof Integer) {
+				single[0] = (int) entry.getValue();
+				visitor.visit(hash, -1, single, 1);
+			} else {
+				DictionaryItem item = (DictionaryItem) entry.getValue();
+				visitor.visit(hash, item.count > 0 ? item.wordNr : -1, item.suggestions.toArray(), item.suggestions.size());
+			}
+		}
+	}
+
+}
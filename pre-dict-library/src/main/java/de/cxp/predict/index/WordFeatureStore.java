@@ -0,0 +1,40 @@
+package de.cxp.predict.index;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.cxp.predict.api.WordFeatures;
+
+/**
+ * The {@link WordFeatures} of the indexed words. They are keyed by the word
+ * itself, so they stay valid when the word numbers change by compaction or
+ * freezing. Lookups may read them while words are added or removed.
+ */
+public class WordFeatureStore {
+
+	private final ConcurrentHashMap<String, WordFeatures> features = new ConcurrentHashMap<>();
+
+	public void add(String word) {
+		features.put(word, WordFeatures.of(word));
+	}
+
+	public void remove(String word) {
+		features.remove(word);
+	}
+
+	/**
+	 * @param word
+	 * @return the stored features of the word, or new ones if the word is not
+	 *         stored
+	 */
+	public WordFeatures get(String word) {
+		WordFeatures wordFeatures = features.get(word);
+		return wordFeatures != null ? wordFeatures : WordFeatures.of(word);
+	}
+
+	/**
+	 * @return number of stored words
+	 */
+	public int size() {
+		return features.size();
+	}
+}